@@ -0,0 +1,12 @@
+package benchmarks;
+
+/**
+ * Settings shared by the benchmarks, so that every run measures the same initial conditions.
+ */
+final class Benchmarks {
+    static final long SEED = 42;
+    static final double DELTA_T = 0.001;
+
+    private Benchmarks() {
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import engine.DampedOscillator;
+import engine.EstimationMethod;
+import engine.Integrator;
+import engine.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per step overhead of the integrators, on the oscillator where the force itself costs next to nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DampedOscillatorBenchmark {
+    @Param({"VERLET", "BEEMAN", "GEAR", "LEAPFROG", "YOSHIDA"})
+    public Integrator integrator;
+
+    private EstimationMethod estimationMethod;
+    private Iterator<Time> estimation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        estimationMethod = new EstimationMethod(new DampedOscillator(1e4, 100, 1, 70), Benchmarks.DELTA_T, Double.MAX_VALUE);
+    }
+
+    @Setup(Level.Iteration)
+    public void restart() {
+        estimation = integrator.estimation(estimationMethod);
+    }
+
+    @Benchmark
+    public Time next() {
+        return estimation.next();
+    }
+}
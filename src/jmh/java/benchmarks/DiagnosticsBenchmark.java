@@ -0,0 +1,59 @@
+package benchmarks;
+
+import engine.Diagnostics;
+import engine.GravitationalSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.ParticleGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observables sampled by the studies. With the fused energy mode the potential of an unchanged configuration is
+ * reused, so that variant measures the sampling overhead on top of a step rather than a full evaluation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiagnosticsBenchmark {
+    @Param({"1500", "20000"})
+    public int particles;
+
+    @Param({"false", "true"})
+    public boolean fusedEnergy;
+
+    private GravitationalSystem system;
+
+    @Setup
+    public void setUp() {
+        system = new GravitationalSystem(ParticleGenerator.generate(particles, 0, 0.1, Benchmarks.SEED), 1, 1, 0.1);
+        system.setFusedEnergy(fusedEnergy);
+    }
+
+    @Benchmark
+    public double halfMassRadius() {
+        return system.halfMassRadius();
+    }
+
+    @Benchmark
+    public double systemEnergy() {
+        return system.systemEnergy();
+    }
+
+    @Benchmark
+    public Diagnostics diagnostics() {
+        return system.diagnostics();
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import engine.BarnesHutSolver;
+import engine.DirectSumSolver;
+import engine.ForceSolver;
+import engine.GravitationalSystem;
+import engine.VectorizedSolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.ParticleGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Force matrix of a gaussian cluster for every solver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ForceBenchmark {
+    @Param({"100", "1000", "5000", "20000"})
+    public int particles;
+
+    @Param({"direct", "simd", "tree"})
+    public String solver;
+
+    private GravitationalSystem system;
+    private double[][] forces;
+
+    @Setup
+    public void setUp() {
+        ForceSolver forceSolver = switch (solver) {
+            case "direct" -> new DirectSumSolver();
+            case "simd" -> new VectorizedSolver();
+            case "tree" -> new BarnesHutSolver(0.5);
+            default -> throw new IllegalArgumentException("Unknown force solver: " + solver);
+        };
+        system = new GravitationalSystem(ParticleGenerator.generate(particles, 0, 0.1, Benchmarks.SEED), 1, 1, 0.1, forceSolver);
+        forces = new double[3][particles];
+    }
+
+    @Benchmark
+    public double[][] getForceMatrix() {
+        return system.getForceMatrix();
+    }
+
+    @Benchmark
+    public double[][] computeForcesInPlace() {
+        system.computeForces(forces);
+        return forces;
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import engine.EstimationMethod;
+import engine.GravitationalSystem;
+import engine.Integrator;
+import engine.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.ParticleGenerator;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single {@code next()} of every integrator on a gravitational system. The estimation restarts from the same
+ * particles on every iteration so that all of them measure comparable configurations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class IntegratorStepBenchmark {
+    @Param({"100", "1000"})
+    public int particles;
+
+    @Param({"VERLET", "BEEMAN", "GEAR", "LEAPFROG", "YOSHIDA"})
+    public Integrator integrator;
+
+    private EstimationMethod estimationMethod;
+    private Iterator<Time> estimation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GravitationalSystem system = new GravitationalSystem(ParticleGenerator.generate(particles, 0, 0.1, Benchmarks.SEED), 1, 1, 0.1);
+        estimationMethod = new EstimationMethod(system, Benchmarks.DELTA_T, Double.MAX_VALUE);
+    }
+
+    @Setup(Level.Iteration)
+    public void restart() {
+        estimation = integrator.estimation(estimationMethod);
+    }
+
+    @Benchmark
+    public Time next() {
+        return estimation.next();
+    }
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import engine.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.ParticleGenerator;
+import tools.TrajectoryOutput;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames written per second by every trajectory format, to a temporary file recreated on every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+    @Param({"1000"})
+    public int particles;
+
+    @Param({TrajectoryOutput.TEXT, TrajectoryOutput.BINARY, TrajectoryOutput.BINARY_SINGLE_PRECISION})
+    public String format;
+
+    private Time frame;
+    private Path directory;
+    private TrajectoryOutput output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        frame = new Time(0, List.copyOf(ParticleGenerator.generate(particles, 0, 0.1, Benchmarks.SEED)));
+        directory = Files.createTempDirectory("output-benchmark");
+    }
+
+    @Setup(Level.Iteration)
+    public void open() {
+        output = TrajectoryOutput.forFormat(format, directory.resolve("frames.txt").toString(), frame.particles());
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        output.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList())
+                Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void processTime() {
+        output.processTime(frame);
+    }
+
+    @Benchmark
+    public void processTimeAnim() {
+        output.processTimeAnim(frame);
+    }
+}
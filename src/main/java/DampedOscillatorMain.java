@@ -1,46 +1,88 @@
 import engine.DampedOscillator;
 import engine.EstimationMethod;
+import engine.Integrator;
 import engine.MovementModel;
+import engine.OscillatorEnsemble;
 import engine.Time;
-import tools.PostProcessor;
+import tools.TrajectoryOutput;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 public class DampedOscillatorMain {
     private static final String DT = "DT";
+    private static final String DTS = "DTS";
     private static final String ESTIMATOR = "estimator";
     private static final String OUTPUT = "output";
+    private static final String FORMAT = "format";
+    private static final String DEFAULT_DTS = "1e-2,1e-3,1e-4,1e-5,1e-6";
+    private static final String DEFAULT_SWEEP_OUTPUT = "oscillatorSweep.csv";
+    private static final double A = 1;
+    private static final double K = Math.pow(10, 4);
+    private static final double GAMMA = 100;
+    private static final double MASS = 70;
+    private static final double END_TIME = 5;
+
     public static void main(String[] args) throws IOException {
         String estimator = System.getProperty(ESTIMATOR);
-        double deltaT = Double.parseDouble(System.getProperty(DT));
         String output = System.getProperty(OUTPUT);
-        double A = 1;
-        double gamma = 100;
-        double mass = 70;
-        double endTime = 5;
-        MovementModel model = new DampedOscillator(Math.pow(10, 4), gamma, A, mass);
+        if (estimator.equals("sweep")) {
+            sweep(output == null ? DEFAULT_SWEEP_OUTPUT : output);
+            return;
+        }
+        double deltaT = Double.parseDouble(System.getProperty(DT));
+        String format = System.getProperty(FORMAT);
+        double endTime = END_TIME;
+        MovementModel model = new DampedOscillator(K, GAMMA, A, MASS);
         EstimationMethod estimationMethod = new EstimationMethod(model, deltaT, endTime);
         Iterator<Time> timeIt;
         if (estimator.equals("verlet")) {
             timeIt = estimationMethod.verletEstimation();
-            try (PostProcessor postProcessor = new PostProcessor(output)) {
+            try (TrajectoryOutput postProcessor = TrajectoryOutput.forFormat(format, output, model.particles())) {
                 timeIt.forEachRemaining(postProcessor::processTime);
             }
             System.out.printf("Finished Verlet with deltaT=%f\n", deltaT);
         }
         else if (estimator.equals("beeman")) {
             timeIt = estimationMethod.beemanEstimation();
-            try (PostProcessor postProcessor = new PostProcessor(output)) {
+            try (TrajectoryOutput postProcessor = TrajectoryOutput.forFormat(format, output, model.particles())) {
                 timeIt.forEachRemaining(postProcessor::processTime);
             }
             System.out.printf("Finished Beeman with deltaT=%f\n", deltaT);
         }
         else {
             timeIt = estimationMethod.gearEstimation();
-            try (PostProcessor postProcessor = new PostProcessor(output)) {
+            try (TrajectoryOutput postProcessor = TrajectoryOutput.forFormat(format, output, model.particles())) {
                 timeIt.forEachRemaining(postProcessor::processTime);
             }
             System.out.printf("Finished Gear with deltaT=%f\n", deltaT);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs every integrator for every time step in {@code -DDTS} as one ensemble per integrator, and writes the
+     * error of each run against the analytic solution.
+     */
+    private static void sweep(String output) throws IOException {
+        double[] deltaTs = Arrays.stream(System.getProperty(DTS, DEFAULT_DTS).split(",")).mapToDouble(Double::parseDouble).toArray();
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Path.of(output)))) {
+            writer.println("integrator,deltaT,steps,meanSquaredError,maxError");
+            for (Integrator integrator : List.of(Integrator.VERLET, Integrator.BEEMAN, Integrator.GEAR)) {
+                List<OscillatorEnsemble.Member> members = new ArrayList<>();
+                for (double deltaT : deltaTs)
+                    members.add(new OscillatorEnsemble.Member(K, GAMMA, MASS, A, deltaT));
+                OscillatorEnsemble ensemble = new OscillatorEnsemble(integrator, members, END_TIME);
+                ensemble.run();
+                for (int i = 0; i < ensemble.size(); i++)
+                    writer.printf("%s,%s,%d,%.6e,%.6e%n", integrator.displayName(), deltaTs[i], ensemble.steps(i),
+                            ensemble.meanSquaredError(i), ensemble.maxError(i));
+                System.out.printf("Finished %s sweep over %d time steps\n", integrator.displayName(), deltaTs.length);
+            }
+        }
+    }
+}
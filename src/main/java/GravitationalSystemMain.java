@@ -1,22 +1,52 @@
 import engine.*;
+import tools.AsyncFrameWriter;
+import tools.MetricsServer;
+import tools.Checkpointer;
+import tools.DiagnosticsWriter;
+import tools.EnsembleStatistics;
 import tools.ParticleGenerator;
 import tools.PostProcessor;
+import tools.SweepRunner;
+import tools.TrajectoryOutput;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GravitationalSystemMain {
     private static final String N = "N";
     private static final String DT = "DT";
     private static final String MAX_T = "MaxT";
     private static final String SIMULATION = "SIM";
+    private static final String SOLVER = "solver";
+    private static final String THETA = "theta";
+    private static final String FORMAT = "format";
+    private static final String REPETITIONS = "repetitions";
+    private static final String RAW = "raw";
+    private static final String FUSED_ENERGY = "fusedEnergy";
+    private static final String INTEGRATOR = "integrator";
+    private static final String SEED = "seed";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String CHECKPOINT_INTERVAL = "checkpointInterval";
+    private static final String RESUME = "resume";
+    private static final String PRECISIONS = "precisions";
+    private static final String MESH = "mesh";
+    private static final String WORKERS = "workers";
 
     private static final double SMOOTHING_FACTOR = 10;
+    private static final double SAMPLE_INTERVAL = 1 / SMOOTHING_FACTOR;
     private static final double INITIAL_VELOCITY_MODULUS = 0.1;
     private static final double RADIUS = 0;
+    private static final double DEFAULT_THETA = 0.5;
+    private static final int FRAME_QUEUE_CAPACITY = 16;
+    private static final int DEFAULT_REPETITIONS = 10;
+    private static final double DEFAULT_CHECKPOINT_INTERVAL = 1;
+    private static final int FORCE_ERROR_CHECK_LIMIT = 20_000;
+    private static final int DEFAULT_WORKERS = 2;
 
 
     public static void main(String[] args) throws IOException {
@@ -25,37 +55,82 @@ public class GravitationalSystemMain {
         double max_t = Double.parseDouble(System.getProperty(MAX_T));
         int simulation = Integer.parseInt(System.getProperty(SIMULATION));
 
-        switch (simulation) {
-            case 1 -> optimalDeltaT(n, max_t);
-            case 2 -> rhmSimulation(delta_t, max_t);
-            case 3 -> galaxyCollision(n, delta_t, max_t);
-            default -> test(n, delta_t, max_t);
+        MetricsServer metricsServer = MetricsServer.startIfConfigured();
+        try {
+            switch (simulation) {
+                case 1 -> optimalDeltaT(n, max_t);
+                case 2 -> rhmSimulation(delta_t, max_t);
+                case 3 -> galaxyCollision(n, delta_t, max_t);
+                default -> test(n, delta_t, max_t);
+            }
+        } finally {
+            if (metricsServer != null)
+                metricsServer.close();
         }
+        if (Metrics.ENABLED)
+            System.out.print(Metrics.report());
+
+    }
+
+    private static GravitationalSystem newSystem(List<Particle> particles) {
+        return newSystem(particles, forceSolver());
+    }
 
+    private static GravitationalSystem newSystem(List<Particle> particles, ForceSolver solver) {
+        GravitationalSystem system = new GravitationalSystem(particles, 1, 1, 0.1, solver);
+        system.setFusedEnergy(Boolean.parseBoolean(System.getProperty(FUSED_ENERGY, "true")));
+        return system;
+    }
+
+    private static ForceSolver forceSolver() {
+        String solver = System.getProperty(SOLVER, "direct");
+        return switch (solver) {
+            case "direct" -> new DirectSumSolver();
+            case "mixed" -> new MixedPrecisionSolver();
+            case "simd" -> new VectorizedSolver();
+            case "shm" -> new SharedMemorySolver(Integer.getInteger(WORKERS, DEFAULT_WORKERS));
+            case "pm", "p3m" -> new ParticleMeshSolver(Integer.getInteger(MESH, ParticleMeshSolver.DEFAULT_MESH_SIZE), solver.equals("p3m"));
+            case "tree" -> new BarnesHutSolver(Double.parseDouble(System.getProperty(THETA, String.valueOf(DEFAULT_THETA))));
+            default -> throw new IllegalArgumentException("Unknown force solver: " + solver);
+        };
     }
 
     private static void rhmSimulation(double deltaT, double maxT) throws IOException {
-        //Para cada valor de N, se realiza la simulacion 10 veces dejando las 10 iteraciones en el mismo archivo
+        //Para cada valor de N, se realizan las repeticiones en paralelo y se guardan sus estadisticas en cada tiempo
         int[] particleCounts = {1500};
-        AtomicInteger j = new AtomicInteger(0);
+        long[] seeds = new long[Integer.parseInt(System.getProperty(REPETITIONS, String.valueOf(DEFAULT_REPETITIONS)))];
+        long baseSeed = System.currentTimeMillis();
+        for (int i = 0; i < seeds.length; i++)
+            seeds[i] = baseSeed + i;
+        boolean writeRaw = Boolean.getBoolean(RAW);
         for (int particleCount : particleCounts) {
-            try (PostProcessor postProcessor = new PostProcessor("rhm" + particleCount + ".txt")) {
-                for (int i = 0; i < 10; i++) {
-                    postProcessor.writeRhmInitialLine(i);
-                    Particle.resetGlobalId();
-                    List<Particle> particles = new ArrayList<>();
-                    ParticleGenerator.generate(particleCount, RADIUS, particles::add, INITIAL_VELOCITY_MODULUS);
-                    GravitationalSystem system = new GravitationalSystem(particles, 1, 1, 0.1);
-                    EstimationMethod estimationMethod = new EstimationMethod(system, deltaT, maxT);
-                    Iterator<Time> timeIt = estimationMethod.gearEstimation();
-                    GravitationalSystem systemIteratorCopy = (GravitationalSystem) estimationMethod.getCurrentModelCopy();
-                    timeIt.forEachRemaining(time -> {
-                        if (j.getAndIncrement() % (1 / (SMOOTHING_FACTOR * deltaT)) == 0) {
-                            postProcessor.processRhm(time.time(), systemIteratorCopy.halfMassRadius());
-                        }
-                    });
+            EnsembleStatistics statistics = new EnsembleStatistics("rhm", "energyError", "virialRatio");
+            List<SweepRunner.Job> jobs = SweepRunner.grid(List.of(Integrator.GEAR), new double[]{deltaT}, new int[]{particleCount}, seeds);
+            new SweepRunner().run(jobs, job -> {
+                int repetition = (int) (job.seed() - baseSeed);
+                List<Particle> particles = ParticleGenerator.generate(job.particleCount(), RADIUS, INITIAL_VELOCITY_MODULUS, job.seed());
+                GravitationalSystem system = newSystem(particles);
+                EstimationMethod estimationMethod = new EstimationMethod(system, job.deltaT(), maxT);
+                double initialEnergy = system.systemEnergy();
+                try (PostProcessor postProcessor = writeRaw ? new PostProcessor("rhm" + particleCount + "_" + repetition + ".txt") : null) {
+                    if (postProcessor != null)
+                        postProcessor.writeRhmInitialLine(repetition);
+                    int[] sample = {0};
+                    estimationMethod.run(job.integrator().estimation(estimationMethod), Sampling.everyTime(SAMPLE_INTERVAL, (time, model) -> {
+                        Diagnostics diagnostics = ((GravitationalSystem) model).diagnostics();
+                        double rhm = diagnostics.halfMassRadius();
+                        statistics.add(sample[0], time.time(), 0, rhm);
+                        double energyError = errorEstimation(diagnostics.totalEnergy(), initialEnergy);
+                        if (Metrics.ENABLED)
+                            Metrics.reportEnergyDrift(energyError);
+                        statistics.add(sample[0], time.time(), 1, energyError);
+                        statistics.add(sample[0]++, time.time(), 2, diagnostics.virialRatio());
+                        if (postProcessor != null)
+                            postProcessor.processRhm(time.time(), rhm);
+                    }));
                 }
-            }
+            });
+            statistics.write("rhm" + particleCount + ".txt");
         }
     }
 
@@ -65,89 +140,85 @@ public class GravitationalSystemMain {
 
     private static void optimalDeltaT(int n, double max_t) throws IOException {
         double[] deltaTs = {1, 0.1, 0.01, 0.001, 0.0001};
-        List<Particle> particles = new ArrayList<>();
-        ParticleGenerator.generate(n, RADIUS, particles::add, INITIAL_VELOCITY_MODULUS);
-        AtomicInteger i = new AtomicInteger(0);
-        //Beeman
-        for (double deltaT : deltaTs) {
-            System.out.println("Starting Beeman simulation with " + n + " particles, delta_t = " + deltaT + ", max_t = " + max_t);
-            GravitationalSystem system = new GravitationalSystem(particles, 1, 1, 0.1);
-            EstimationMethod estimationMethod = new EstimationMethod(system, deltaT, max_t);
-            Iterator<Time> timeIt = estimationMethod.beemanEstimation();
-            GravitationalSystem systemIteratorCopy = (GravitationalSystem) estimationMethod.getCurrentModelCopy();
-            double initialEnergy = system.systemEnergy();
-            try (PostProcessor postProcessorEnergy = new PostProcessor("optimalDeltaTBeemanEnergy" + deltaT + ".txt")) {
-                postProcessorEnergy.processSystemEnergy(new Time(0, particles), initialEnergy);
-                timeIt.forEachRemaining(time -> {
-                    if (i.getAndIncrement() % (1 / (SMOOTHING_FACTOR * deltaT)) == 0) {
-                        double currentEnergy = systemIteratorCopy.systemEnergy();
-                        double error = errorEstimation(currentEnergy, initialEnergy);
-                        postProcessorEnergy.processSystemEnergy(time, error);
-                    }
-                });
-            }
-        }
-        i.set(0);
-
-        //Verlet
-        for (double deltaT : deltaTs) {
-            System.out.println("Starting Verlet simulation with " + n + " particles, delta_t = " + deltaT + ", max_t = " + max_t);
-            GravitationalSystem system = new GravitationalSystem(particles, 1, 1, 0.1);
-            EstimationMethod estimationMethod = new EstimationMethod(system, deltaT, max_t);
-            Iterator<Time> timeIt = estimationMethod.verletEstimation();
-            GravitationalSystem systemIteratorCopy = (GravitationalSystem) estimationMethod.getCurrentModelCopy();
-            double initialEnergy = system.systemEnergy();
-            try (PostProcessor postProcessorEnergy = new PostProcessor("optimalDeltaTVerletEnergy" + deltaT + ".txt")) {
-                postProcessorEnergy.processSystemEnergy(new Time(0, particles), initialEnergy);
-                timeIt.forEachRemaining(time -> {
-                    if (i.getAndIncrement() % (1 / (SMOOTHING_FACTOR * deltaT)) == 0) {
-                        double currentEnergy = systemIteratorCopy.systemEnergy();
+        // Every job regenerates the same initial particles from a shared seed, in its own id space
+        long seed = System.currentTimeMillis();
+        List<SweepRunner.Job> jobs = SweepRunner.grid(List.of(Integrator.BEEMAN, Integrator.VERLET, Integrator.GEAR, Integrator.LEAPFROG, Integrator.YOSHIDA),
+                deltaTs, new int[]{n}, new long[]{seed});
+        // "double" uses the configured solver and keeps the historical file names, the other precisions get a suffix
+        List<String> precisions = List.of(System.getProperty(PRECISIONS, "double").split(","));
+        Map<String, Double> finalErrors = new ConcurrentHashMap<>();
+        for (String precision : precisions) {
+            String suffix = precision.equals("double") ? "" : "_" + precision;
+            new SweepRunner().run(jobs, job -> {
+                String name = job.integrator().displayName();
+                double deltaT = job.deltaT();
+                System.out.println("Starting " + name + " simulation with " + n + " particles, delta_t = " + deltaT + ", max_t = " + max_t + ", precision = " + precision);
+                List<Particle> particles = ParticleGenerator.generate(job.particleCount(), RADIUS, INITIAL_VELOCITY_MODULUS, job.seed());
+                GravitationalSystem system = newSystem(particles, precisionSolver(precision));
+                EstimationMethod estimationMethod = new EstimationMethod(system, deltaT, max_t);
+                double initialEnergy = system.systemEnergy();
+                double[] lastError = {0};
+                try (PostProcessor postProcessorEnergy = new PostProcessor("optimalDeltaT" + name + "Energy" + deltaT + suffix + ".txt")) {
+                    postProcessorEnergy.processSystemEnergy(new Time(0, particles), initialEnergy);
+                    estimationMethod.run(job.integrator().estimation(estimationMethod), Sampling.everyTime(SAMPLE_INTERVAL, (time, model) -> {
+                        double currentEnergy = ((GravitationalSystem) model).systemEnergy();
                         double error = errorEstimation(currentEnergy, initialEnergy);
+                        if (Metrics.ENABLED)
+                            Metrics.reportEnergyDrift(error);
+                        lastError[0] = error;
                         postProcessorEnergy.processSystemEnergy(time, error);
-                    }
-                });
-            }
+                    }));
+                }
+                finalErrors.put(name + " " + deltaT + " " + precision, lastError[0]);
+            });
         }
-        i.set(0);
-
-        //Gear
-        for (double deltaT : deltaTs) {
-            System.out.println("Starting Gear simulation with " + n + " particles, delta_t = " + deltaT + ", max_t = " + max_t);
-            GravitationalSystem system = new GravitationalSystem(particles, 1, 1, 0.1);
-            EstimationMethod estimationMethod = new EstimationMethod(system, deltaT, max_t);
-            Iterator<Time> timeIt = estimationMethod.gearEstimation();
-            GravitationalSystem systemIteratorCopy = (GravitationalSystem) estimationMethod.getCurrentModelCopy();
-            double initialEnergy = system.systemEnergy();
-            try (PostProcessor postProcessorEnergy = new PostProcessor("optimalDeltaTGearEnergy" + deltaT + ".txt")) {
-                postProcessorEnergy.processSystemEnergy(new Time(0, particles), initialEnergy);
-                timeIt.forEachRemaining(time -> {
-                    if (i.getAndIncrement() % (1 / (SMOOTHING_FACTOR * deltaT)) == 0) {
-                        double currentEnergy = systemIteratorCopy.systemEnergy();
-                        double error = errorEstimation(currentEnergy, initialEnergy);
-                        postProcessorEnergy.processSystemEnergy(time, error);
-                    }
-                });
-            }
+        // Final relative energy error of every integrator and time step, one column per precision
+        System.out.println("integrator\tdelta_t\t" + String.join("\t", precisions));
+        for (SweepRunner.Job job : jobs) {
+            StringBuilder row = new StringBuilder(job.integrator().displayName() + "\t" + job.deltaT());
+            for (String precision : precisions)
+                row.append("\t%.6e".formatted(finalErrors.get(job.integrator().displayName() + " " + job.deltaT() + " " + precision)));
+            System.out.println(row);
         }
+    }
 
-
+    private static ForceSolver precisionSolver(String precision) {
+        return switch (precision) {
+            case "double" -> forceSolver();
+            case "mixed" -> new MixedPrecisionSolver();
+            default -> throw new IllegalArgumentException("Unknown precision: " + precision);
+        };
     }
 
     private static void galaxyCollision(int n, double delta_t, double max_t) throws IOException {
-        List<Particle> galaxyParticles = ParticleGenerator.generateColisionGalaxys(n);
-        GravitationalSystem system = new GravitationalSystem(galaxyParticles, 1, 1, 0.1);
+        String resume = System.getProperty(RESUME);
+        byte[] checkpoint = resume == null ? null : Checkpointer.read(Path.of(resume));
+        long seed = checkpoint == null ? Long.getLong(SEED, System.currentTimeMillis()) : EstimationMethod.checkpointSeed(checkpoint);
+        List<Particle> galaxyParticles = ParticleGenerator.generateColisionGalaxys(n, seed);
+        GravitationalSystem system = newSystem(galaxyParticles);
+        // The reference is a direct sum, which would dominate the run for the mesh solvers' particle counts
+        if (galaxyParticles.size() <= FORCE_ERROR_CHECK_LIMIT)
+            System.out.println("Initial force error against direct sum: " + system.forceError());
         EstimationMethod estimationMethod = new EstimationMethod(system, delta_t, max_t);
         //TODO: elegir el mejor estimador para el sistema basandonos en el ej 2.1
-        Iterator<Time> iterator = estimationMethod.verletEstimation();
-        try (PostProcessor postProcessor = new PostProcessor("galaxyColissionAnimation.txt")) {
-            postProcessor.processTimeAnim(new Time(0, galaxyParticles));
-            AtomicInteger i = new AtomicInteger(0);
-            iterator.forEachRemaining(time -> {
-                if (i.getAndIncrement() % (1 / (SMOOTHING_FACTOR * delta_t)) == 0) {
-                    postProcessor.processTimeAnim(time);
-                }
-
-            });
+        Integrator integrator = Integrator.valueOf(System.getProperty(INTEGRATOR, Integrator.VERLET.name()).toUpperCase());
+        Iterator<Time> iterator = checkpoint == null ? integrator.estimation(estimationMethod) : estimationMethod.resume(checkpoint);
+        String checkpointPath = System.getProperty(CHECKPOINT);
+        // A resumed run continues the animation of the interrupted one, minus the frames sampled after the checkpoint.
+        // Half a step past it, as text frames store a rounded time
+        try (TrajectoryOutput postProcessor = checkpoint == null
+                ? TrajectoryOutput.forFormat(System.getProperty(FORMAT), "galaxyColissionAnimation.txt", galaxyParticles)
+                : TrajectoryOutput.resumeFormat(System.getProperty(FORMAT), "galaxyColissionAnimation.txt", galaxyParticles,
+                        estimationMethod.currentTime(iterator) + delta_t / 2);
+             AsyncFrameWriter frameWriter = new AsyncFrameWriter(FRAME_QUEUE_CAPACITY, List.of(postProcessor::processTimeAnim));
+             Checkpointer checkpointer = checkpointPath == null ? null : new Checkpointer(estimationMethod, iterator, seed, Path.of(checkpointPath))) {
+            if (checkpoint == null)
+                frameWriter.accept(new Time(0, galaxyParticles));
+            List<Sampling> samplings = new ArrayList<>();
+            samplings.add(Sampling.everyTime(SAMPLE_INTERVAL, (time, model) -> frameWriter.accept(time)));
+            if (checkpointer != null)
+                samplings.add(Sampling.everyTime(Double.parseDouble(System.getProperty(CHECKPOINT_INTERVAL, String.valueOf(DEFAULT_CHECKPOINT_INTERVAL))), checkpointer));
+            estimationMethod.run(iterator, samplings.toArray(Sampling[]::new));
         }
 
     }
@@ -155,62 +226,79 @@ public class GravitationalSystemMain {
     private static void test(int n, double delta_t, double max_t) throws IOException {
         List<Particle> particles = new ArrayList<>();
         ParticleGenerator.generate(n, RADIUS, particles::add, INITIAL_VELOCITY_MODULUS);
-        GravitationalSystem system = new GravitationalSystem(particles, 1, 1, 0.1);
+        GravitationalSystem system = newSystem(particles);
         EstimationMethod estimationMethod = new EstimationMethod(system, delta_t, max_t);
+        // The reference is a direct sum, which would dominate the run for the mesh solvers' particle counts
+        if (particles.size() <= FORCE_ERROR_CHECK_LIMIT)
+            System.out.println("Initial force error against direct sum: " + system.forceError());
         System.out.println("Starting simulation with " + n + " particles, delta_t = " + delta_t + ", max_t = " + max_t + "and Verlet method.");
-        System.out.println("System energy before: " + system.systemEnergy());
+        double initialEnergy = system.systemEnergy();
+        System.out.println("System energy before: " + initialEnergy);
         Iterator<Time> timeIt;
+        long steps;
         timeIt = estimationMethod.verletEstimation();
         GravitationalSystem systemIteratorCopy1 = (GravitationalSystem) estimationMethod.getCurrentModelCopy();
-        AtomicInteger i = new AtomicInteger(0);
-        try (PostProcessor postProcessor = new PostProcessor("verletGravitational.txt");
+        try (TrajectoryOutput postProcessor = TrajectoryOutput.forFormat(System.getProperty(FORMAT), "verletGravitational.txt", particles);
              PostProcessor postProcessorEnergy = new PostProcessor("energyVerletGravitational.txt");
-             PostProcessor animProcessor = new PostProcessor("animVerletGravitational.txt")) {
+             DiagnosticsWriter diagnosticsWriter = new DiagnosticsWriter("diagnosticsVerletGravitational.txt");
+             TrajectoryOutput animProcessor = TrajectoryOutput.forFormat(System.getProperty(FORMAT), "animVerletGravitational.txt", particles);
+             AsyncFrameWriter frameWriter = new AsyncFrameWriter(FRAME_QUEUE_CAPACITY, List.of(postProcessor::processTime, animProcessor::processTimeAnim))) {
             postProcessorEnergy.processSystemEnergy(new Time(0, particles), systemIteratorCopy1.systemEnergy());
-            timeIt.forEachRemaining(time -> {
-                if (i.getAndIncrement() % (1 / (SMOOTHING_FACTOR * delta_t)) == 0) {
-                    postProcessor.processTime(time);
-                    animProcessor.processTimeAnim(time);
-                    postProcessorEnergy.processSystemEnergy(time, systemIteratorCopy1.systemEnergy());
-                }
-            });
+            steps = estimationMethod.run(timeIt,
+                    Sampling.everyTime(SAMPLE_INTERVAL, (time, model) -> frameWriter.accept(time)),
+                    Sampling.everyTime(SAMPLE_INTERVAL, (time, model) -> {
+                        double energy = systemIteratorCopy1.systemEnergy();
+                        if (Metrics.ENABLED)
+                            Metrics.reportEnergyDrift(errorEstimation(energy, initialEnergy));
+                        postProcessorEnergy.processSystemEnergy(time, energy);
+                    }),
+                    Sampling.everyTime(SAMPLE_INTERVAL, diagnosticsWriter));
         }
+        System.out.println("Verlet " + estimationMethod.getForceCache() + " over " + steps + " steps");
 
         System.out.println("Starting simulation with " + n + " particles, delta_t = " + delta_t + ", max_t = " + max_t + "and Beeman method.");
         System.out.println("System energy before: " + system.systemEnergy());
         timeIt = estimationMethod.beemanEstimation();
         GravitationalSystem systemIteratorCopy2 = (GravitationalSystem) estimationMethod.getCurrentModelCopy();
-        i.set(0);
-        try (PostProcessor postProcessor = new PostProcessor("beemanGravitational.txt");
+        try (TrajectoryOutput postProcessor = TrajectoryOutput.forFormat(System.getProperty(FORMAT), "beemanGravitational.txt", particles);
              PostProcessor postProcessorEnergy = new PostProcessor("energyBeemanGravitational.txt");
-             PostProcessor animProcessor2 = new PostProcessor("animBeemanGravitational.txt")) {
+             DiagnosticsWriter diagnosticsWriter = new DiagnosticsWriter("diagnosticsBeemanGravitational.txt");
+             TrajectoryOutput animProcessor2 = TrajectoryOutput.forFormat(System.getProperty(FORMAT), "animBeemanGravitational.txt", particles);
+             AsyncFrameWriter frameWriter = new AsyncFrameWriter(FRAME_QUEUE_CAPACITY, List.of(postProcessor::processTime, animProcessor2::processTimeAnim))) {
             postProcessorEnergy.processSystemEnergy(new Time(0, particles), systemIteratorCopy2.systemEnergy());
-            timeIt.forEachRemaining(time -> {
-                if (i.getAndIncrement() % (1 / (SMOOTHING_FACTOR * delta_t)) == 0) {
-                    postProcessor.processTime(time);
-                    postProcessorEnergy.processSystemEnergy(time, systemIteratorCopy2.systemEnergy());
-                    animProcessor2.processTimeAnim(time);
-                }
-            });
+            steps = estimationMethod.run(timeIt,
+                    Sampling.everyTime(SAMPLE_INTERVAL, (time, model) -> frameWriter.accept(time)),
+                    Sampling.everyTime(SAMPLE_INTERVAL, (time, model) -> {
+                        double energy = systemIteratorCopy2.systemEnergy();
+                        if (Metrics.ENABLED)
+                            Metrics.reportEnergyDrift(errorEstimation(energy, initialEnergy));
+                        postProcessorEnergy.processSystemEnergy(time, energy);
+                    }),
+                    Sampling.everyTime(SAMPLE_INTERVAL, diagnosticsWriter));
         }
+        System.out.println("Beeman " + estimationMethod.getForceCache() + " over " + steps + " steps");
 
         System.out.println("Starting simulation with " + n + " particles, delta_t = " + delta_t + ", max_t = " + max_t + "and Gear method.");
         System.out.println("System energy before: " + system.systemEnergy());
         timeIt = estimationMethod.gearEstimation();
         GravitationalSystem systemIteratorCopy3 = (GravitationalSystem) estimationMethod.getCurrentModelCopy();
-        i.set(0);
-        try (PostProcessor postProcessor = new PostProcessor("gearGravitational.txt");
+        try (TrajectoryOutput postProcessor = TrajectoryOutput.forFormat(System.getProperty(FORMAT), "gearGravitational.txt", particles);
              PostProcessor postProcessorEnergy = new PostProcessor("energyGearGravitational.txt");
-             PostProcessor animProcessor3 = new PostProcessor("animGearGravitational.txt")) {
+             DiagnosticsWriter diagnosticsWriter = new DiagnosticsWriter("diagnosticsGearGravitational.txt");
+             TrajectoryOutput animProcessor3 = TrajectoryOutput.forFormat(System.getProperty(FORMAT), "animGearGravitational.txt", particles);
+             AsyncFrameWriter frameWriter = new AsyncFrameWriter(FRAME_QUEUE_CAPACITY, List.of(postProcessor::processTime, animProcessor3::processTimeAnim))) {
             postProcessorEnergy.processSystemEnergy(new Time(0, particles), systemIteratorCopy3.systemEnergy());
-            timeIt.forEachRemaining(time -> {
-                if (i.getAndIncrement() % (1 / (SMOOTHING_FACTOR * delta_t)) == 0) {
-                    postProcessor.processTime(time);
-                    postProcessorEnergy.processSystemEnergy(time, systemIteratorCopy3.systemEnergy());
-                    animProcessor3.processTimeAnim(time);
-                }
-            });
+            steps = estimationMethod.run(timeIt,
+                    Sampling.everyTime(SAMPLE_INTERVAL, (time, model) -> frameWriter.accept(time)),
+                    Sampling.everyTime(SAMPLE_INTERVAL, (time, model) -> {
+                        double energy = systemIteratorCopy3.systemEnergy();
+                        if (Metrics.ENABLED)
+                            Metrics.reportEnergyDrift(errorEstimation(energy, initialEnergy));
+                        postProcessorEnergy.processSystemEnergy(time, energy);
+                    }),
+                    Sampling.everyTime(SAMPLE_INTERVAL, diagnosticsWriter));
         }
+        System.out.println("Gear " + estimationMethod.getForceCache() + " over " + steps + " steps");
     }
 
 }
@@ -0,0 +1,279 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Barnes-Hut approximation of the softened gravitational force. The octree is rebuilt on every
+ * call and a cell is treated as a single body when {@code size / distance < theta}. The potential energy is
+ * approximated by the same cells as the forces.
+ */
+public class BarnesHutSolver implements ForceSolver {
+    private static final int MAX_DEPTH = 48;
+    private static final int CHILDREN = 8;
+    private static final int EMPTY = -1;
+    // Deepest traversal: every level pushes at most its eight children
+    private static final int STACK_SIZE = CHILDREN * (MAX_DEPTH + 1) + 1;
+    // One traversal stack per worker thread, reused across bodies and calls
+    private static final ThreadLocal<int[]> STACKS = ThreadLocal.withInitial(() -> new int[STACK_SIZE]);
+
+    private final double theta;
+
+    public BarnesHutSolver(double theta) {
+        if (theta < 0)
+            throw new IllegalArgumentException("Opening angle must be non negative");
+        this.theta = theta;
+    }
+
+    public double theta() {
+        return theta;
+    }
+
+    @Override
+    public void computeForces(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        computeForcesAndPotential(x, y, z, GM2, h, forces);
+    }
+
+    @Override
+    public double computeForcesAndPotential(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        final int n = x.length;
+        if (n == 0)
+            return 0;
+        Octree tree = new Octree(x, y, z);
+        final double h2 = h * h;
+        final double theta2 = theta * theta;
+        final double[] potential = new double[n];
+        IntStream.range(0, n).parallel().forEach(i -> potential[i] = tree.accumulate(i, GM2, h2, theta2, forces));
+        double inverseDistances = 0;
+        for (int i = 0; i < n; i++)
+            inverseDistances += potential[i];
+        // Every interaction is seen from both ends
+        return -GM2 * inverseDistances / 2;
+    }
+
+    @Override
+    public void computeForces(double[] x, double[] y, double[] z, double GM2, double h,
+                              int[] targets, int targetCount, double[][] forces) {
+        if (targetCount == 0)
+            return;
+        Octree tree = new Octree(x, y, z);
+        final double h2 = h * h;
+        final double theta2 = theta * theta;
+        IntStream.range(0, targetCount).parallel().forEach(k -> tree.accumulate(targets[k], GM2, h2, theta2, forces));
+    }
+
+    private static class Octree {
+        private final double[] x, y, z;
+        // A leaf stores its bodies as a linked list through nextBody, internal nodes store their first child
+        private final int[] nextBody;
+        private int[] body;
+        private int[] firstChild;
+        private double[] centerX, centerY, centerZ, halfSize;
+        private int[] count;
+        private double[] comX, comY, comZ;
+        private int nodeCount;
+
+        Octree(double[] x, double[] y, double[] z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            int n = x.length;
+            nextBody = new int[n];
+            Arrays.fill(nextBody, EMPTY);
+            allocate(Math.max(CHILDREN + 1, 2 * n + 1));
+
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                minZ = Math.min(minZ, z[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+                maxZ = Math.max(maxZ, z[i]);
+            }
+            double half = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) / 2;
+            // Slightly enlarged so that bodies on the boundary fall strictly inside the root cell
+            newNode((minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2, half * 1.0001 + Double.MIN_NORMAL);
+
+            for (int i = 0; i < n; i++)
+                insert(i);
+            computeMoments();
+        }
+
+        private void allocate(int capacity) {
+            body = new int[capacity];
+            firstChild = new int[capacity];
+            centerX = new double[capacity];
+            centerY = new double[capacity];
+            centerZ = new double[capacity];
+            halfSize = new double[capacity];
+            count = new int[capacity];
+            comX = new double[capacity];
+            comY = new double[capacity];
+            comZ = new double[capacity];
+        }
+
+        private void grow() {
+            int capacity = body.length * 2;
+            body = Arrays.copyOf(body, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            centerX = Arrays.copyOf(centerX, capacity);
+            centerY = Arrays.copyOf(centerY, capacity);
+            centerZ = Arrays.copyOf(centerZ, capacity);
+            halfSize = Arrays.copyOf(halfSize, capacity);
+            count = Arrays.copyOf(count, capacity);
+            comX = Arrays.copyOf(comX, capacity);
+            comY = Arrays.copyOf(comY, capacity);
+            comZ = Arrays.copyOf(comZ, capacity);
+        }
+
+        private int newNode(double cx, double cy, double cz, double half) {
+            if (nodeCount == body.length)
+                grow();
+            int node = nodeCount++;
+            body[node] = EMPTY;
+            firstChild[node] = EMPTY;
+            centerX[node] = cx;
+            centerY[node] = cy;
+            centerZ[node] = cz;
+            halfSize[node] = half;
+            return node;
+        }
+
+        private int octant(int node, int i) {
+            return (x[i] >= centerX[node] ? 1 : 0)
+                    | (y[i] >= centerY[node] ? 2 : 0)
+                    | (z[i] >= centerZ[node] ? 4 : 0);
+        }
+
+        private void split(int node) {
+            double quarter = halfSize[node] / 2;
+            int first = EMPTY;
+            for (int o = 0; o < CHILDREN; o++) {
+                int child = newNode(
+                        centerX[node] + ((o & 1) != 0 ? quarter : -quarter),
+                        centerY[node] + ((o & 2) != 0 ? quarter : -quarter),
+                        centerZ[node] + ((o & 4) != 0 ? quarter : -quarter),
+                        quarter);
+                if (o == 0)
+                    first = child;
+            }
+            firstChild[node] = first;
+        }
+
+        private void insert(int i) {
+            int node = 0;
+            int depth = 0;
+            while (true) {
+                if (firstChild[node] == EMPTY) {
+                    int resident = body[node];
+                    if (resident == EMPTY) {
+                        body[node] = i;
+                        return;
+                    }
+                    if (depth >= MAX_DEPTH) {
+                        // Coincident bodies: keep them together in the same leaf
+                        nextBody[i] = resident;
+                        body[node] = i;
+                        return;
+                    }
+                    split(node);
+                    body[node] = EMPTY;
+                    body[firstChild[node] + octant(node, resident)] = resident;
+                }
+                node = firstChild[node] + octant(node, i);
+                depth++;
+            }
+        }
+
+        private void computeMoments() {
+            // Children are always created after their parent, so a reverse sweep visits them first
+            for (int node = nodeCount - 1; node >= 0; node--) {
+                int c = 0;
+                double sx = 0, sy = 0, sz = 0;
+                if (firstChild[node] == EMPTY) {
+                    for (int b = body[node]; b != EMPTY; b = nextBody[b]) {
+                        c++;
+                        sx += x[b];
+                        sy += y[b];
+                        sz += z[b];
+                    }
+                } else {
+                    for (int child = firstChild[node]; child < firstChild[node] + CHILDREN; child++) {
+                        c += count[child];
+                        sx += comX[child] * count[child];
+                        sy += comY[child] * count[child];
+                        sz += comZ[child] * count[child];
+                    }
+                }
+                count[node] = c;
+                if (c > 0) {
+                    comX[node] = sx / c;
+                    comY[node] = sy / c;
+                    comZ[node] = sz / c;
+                }
+            }
+        }
+
+        private boolean contains(int node, int i) {
+            double half = halfSize[node];
+            return Math.abs(x[i] - centerX[node]) <= half
+                    && Math.abs(y[i] - centerY[node]) <= half
+                    && Math.abs(z[i] - centerZ[node]) <= half;
+        }
+
+        /**
+         * Writes the force on body i and returns the sum of the inverse softened distances it sees, weighted by
+         * the number of bodies of every accepted cell.
+         */
+        double accumulate(int i, double GM2, double h2, double theta2, double[][] forces) {
+            final double xi = x[i], yi = y[i], zi = z[i];
+            double fx = 0, fy = 0, fz = 0, potential = 0;
+            final int[] stack = STACKS.get();
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                if (count[node] == 0)
+                    continue;
+                if (firstChild[node] == EMPTY) {
+                    for (int b = body[node]; b != EMPTY; b = nextBody[b]) {
+                        if (b == i)
+                            continue;
+                        final double dx = xi - x[b];
+                        final double dy = yi - y[b];
+                        final double dz = zi - z[b];
+                        final double invDist = 1.0 / Math.sqrt(dx*dx + dy*dy + dz*dz + h2);
+                        final double scalar = -GM2 * invDist * invDist * invDist;
+                        potential += invDist;
+                        fx += dx * scalar;
+                        fy += dy * scalar;
+                        fz += dz * scalar;
+                    }
+                    continue;
+                }
+                final double dx = xi - comX[node];
+                final double dy = yi - comY[node];
+                final double dz = zi - comZ[node];
+                final double r2 = dx*dx + dy*dy + dz*dz;
+                final double size = 2 * halfSize[node];
+                if (size * size < theta2 * r2 && !contains(node, i)) {
+                    final double invDist = 1.0 / Math.sqrt(r2 + h2);
+                    final double scalar = -GM2 * count[node] * invDist * invDist * invDist;
+                    potential += count[node] * invDist;
+                    fx += dx * scalar;
+                    fy += dy * scalar;
+                    fz += dz * scalar;
+                } else {
+                    for (int child = firstChild[node]; child < firstChild[node] + CHILDREN; child++)
+                        stack[top++] = child;
+                }
+            }
+            forces[0][i] = fx;
+            forces[1][i] = fy;
+            forces[2][i] = fz;
+            return potential;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package engine;
+
+/**
+ * Running sum with Neumaier's compensation, which keeps the rounding error of adding many terms of mixed
+ * magnitude independent of their number.
+ */
+public class CompensatedSum {
+    private double sum;
+    private double compensation;
+
+    public void add(double value) {
+        double t = sum + value;
+        if (Math.abs(sum) >= Math.abs(value))
+            compensation += (sum - t) + value;
+        else
+            compensation += (value - t) + sum;
+        sum = t;
+    }
+
+    public void add(CompensatedSum other) {
+        add(other.sum);
+        add(other.compensation);
+    }
+
+    public double value() {
+        return sum + compensation;
+    }
+}
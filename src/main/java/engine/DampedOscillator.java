@@ -1,43 +1,27 @@
 package engine;
 
 import java.util.List;
-import java.util.function.BinaryOperator;
 
 public class DampedOscillator implements MovementModel {
 
     private final double K;
     private final double gamma;
     private final double mass;
-    private final Particle particle;
+    private final ParticleStore state;
+    private static final int AXIS = 1;
 
     public DampedOscillator(double K, double gamma, double A, double mass) {
         this(
                 K, gamma, mass,
-                new Particle(0, A, 0, 0, -A*gamma/(2*mass), 0, 0)
+                ParticleStore.of(List.of(new Particle(0, A, 0, 0, -A*gamma/(2*mass), 0, 0)))
         );
     }
 
-    private DampedOscillator(double K, double gamma, double mass, Particle particle) {
+    private DampedOscillator(double K, double gamma, double mass, ParticleStore state) {
         this.K = K;
         this.gamma = gamma;
         this.mass = mass;
-        this.particle = particle;
-    }
-
-    private BinaryOperator<Double> forceFunction() {
-        return (pos, speed) -> -K*pos - gamma*speed;
-    }
-
-    private BinaryOperator<Double> getR3() {
-        return (r1, r2) -> forceFunction().apply(r1, r2) / mass;
-    }
-
-    private BinaryOperator<Double> getR4() {
-        return (r2, r3) -> forceFunction().apply(r2, r3) / mass;
-    }
-
-    private BinaryOperator<Double> getR5() {
-        return (r3, r4) -> forceFunction().apply(r3, r4) / mass;
+        this.state = state;
     }
 
     @Override
@@ -46,8 +30,8 @@ public class DampedOscillator implements MovementModel {
     }
 
     @Override
-    public List<Particle> particles() {
-        return List.of(particle);
+    public ParticleStore state() {
+        return state;
     }
 
     @Override
@@ -61,40 +45,43 @@ public class DampedOscillator implements MovementModel {
     }
 
     @Override
-    public double[][] getForceMatrix() {
-        double[][] forceMatrix = {{0, 0, 0}};
-        forceMatrix[0][1] = forceFunction().apply(particle.getY(), particle.getSpeedY());
-        return forceMatrix;
-    }
-
-    @Override
-    public double[][] getR3Matrix() {
-        double[][] R2Matrix = getR2Matrix();
-        double[][] R3Matrix = new double[1][Particle.DIMENSION];
-        R3Matrix[0][1] = getR3().apply(particle.getSpeedY(), R2Matrix[0][1]);
-        return R3Matrix;
+    public void computeForces(double[][] forces) {
+        for (int d = 0; d < Particle.DIMENSION; d++)
+            forces[d][0] = 0;
+        // Evaluated on primitives so that stepping does not box
+        forces[AXIS][0] = -K * state.position(AXIS)[0] - gamma * state.speed(AXIS)[0];
     }
 
+    /**
+     * Every order follows from the force law, see {@link #computeDerivatives}.
+     */
     @Override
-    public double[][] getR4Matrix() {
-        double[][] R2Matrix = getR2Matrix();
-        double[][] R3Matrix = getR3Matrix();
-        double[][] R4Matrix = new double[1][Particle.DIMENSION];
-        R4Matrix[0][1] = getR4().apply(R2Matrix[0][1], R3Matrix[0][1]);
-        return R4Matrix;
+    public int highestNonZeroDerivative() {
+        return Integer.MAX_VALUE;
     }
 
+    /**
+     * Differentiating {@code m x'' = -K x - gamma x'} gives every order from the two before it, so the whole
+     * hierarchy costs one force evaluation.
+     */
     @Override
-    public double[][] getR5Matrix() {
-        double[][] R3Matrix = getR3Matrix();
-        double[][] R4Matrix = getR4Matrix();
-        double[][] R5Matrix = new double[1][Particle.DIMENSION];
-        R5Matrix[0][1] = getR5().apply(R3Matrix[0][1], R4Matrix[0][1]);
-        return R5Matrix;
+    public void computeDerivatives(int highestOrder, double[][][] derivatives) {
+        computeR2(derivatives[2]);
+        double previous = state.speed(AXIS)[0];
+        double current = derivatives[2][AXIS][0];
+        for (int q = 3; q <= highestOrder; q++) {
+            double[][] derivative = derivatives[q];
+            for (int d = 0; d < Particle.DIMENSION; d++)
+                derivative[d][0] = 0;
+            double next = (-K * previous - gamma * current) / mass;
+            derivative[AXIS][0] = next;
+            previous = current;
+            current = next;
+        }
     }
 
     @Override
     public MovementModel hardCopyModel() {
-        return new DampedOscillator(K, gamma, mass, particle.hardCopy());
+        return new DampedOscillator(K, gamma, mass, state.copy());
     }
 }
@@ -0,0 +1,127 @@
+package engine;
+
+import java.util.stream.IntStream;
+
+/**
+ * Global observables of an equal mass system. Sums over particles are compensated and, for large systems,
+ * split in chunks evaluated in parallel.
+ *
+ * @param centerOfMass    position of the centre of mass
+ * @param halfMassRadius  distance from the centre of mass enclosing half of the particles
+ * @param momentum        total linear momentum
+ * @param angularMomentum total angular momentum about the centre of mass
+ * @param virialRatio     {@code 2K / |U|}, one for a system in virial equilibrium
+ */
+public record Diagnostics(double[] centerOfMass, double halfMassRadius, double[] momentum, double[] angularMomentum,
+                          double kineticEnergy, double potentialEnergy, double virialRatio) {
+    private static final int CHUNK_SIZE = 4096;
+    // Indices of the compensated sums of a chunk
+    private static final int POSITION = 0, MOMENTUM = 3, ANGULAR_MOMENTUM = 6, SPEED2 = 9, SUMS = 10;
+
+    public double totalEnergy() {
+        return kineticEnergy + potentialEnergy;
+    }
+
+    /**
+     * @param potentialEnergy potential of the current positions, which depends on the force law
+     */
+    public static Diagnostics of(ParticleStore state, double mass, double potentialEnergy) {
+        final int n = state.size();
+        final double[] x = state.x(), y = state.y(), z = state.z();
+        final double[] vx = state.speed(0), vy = state.speed(1), vz = state.speed(2);
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        CompensatedSum[][] partials = new CompensatedSum[chunks][];
+        IntStream range = IntStream.range(0, chunks);
+        (chunks > 1 ? range.parallel() : range).forEach(c -> {
+            CompensatedSum[] sums = newSums();
+            for (int i = c * CHUNK_SIZE, end = Math.min(n, i + CHUNK_SIZE); i < end; i++) {
+                sums[POSITION].add(x[i]);
+                sums[POSITION + 1].add(y[i]);
+                sums[POSITION + 2].add(z[i]);
+                sums[MOMENTUM].add(vx[i]);
+                sums[MOMENTUM + 1].add(vy[i]);
+                sums[MOMENTUM + 2].add(vz[i]);
+                sums[ANGULAR_MOMENTUM].add(y[i] * vz[i] - z[i] * vy[i]);
+                sums[ANGULAR_MOMENTUM + 1].add(z[i] * vx[i] - x[i] * vz[i]);
+                sums[ANGULAR_MOMENTUM + 2].add(x[i] * vy[i] - y[i] * vx[i]);
+                sums[SPEED2].add(vx[i] * vx[i] + vy[i] * vy[i] + vz[i] * vz[i]);
+            }
+            partials[c] = sums;
+        });
+        CompensatedSum[] totals = newSums();
+        for (CompensatedSum[] partial : partials)
+            for (int k = 0; k < SUMS; k++)
+                totals[k].add(partial[k]);
+
+        double[] center = new double[Particle.DIMENSION];
+        double[] momentum = new double[Particle.DIMENSION];
+        double[] angularMomentum = new double[Particle.DIMENSION];
+        for (int d = 0; d < Particle.DIMENSION; d++) {
+            center[d] = totals[POSITION + d].value() / n;
+            momentum[d] = mass * totals[MOMENTUM + d].value();
+            angularMomentum[d] = mass * totals[ANGULAR_MOMENTUM + d].value();
+        }
+        // About the centre of mass: L - R x P
+        angularMomentum[0] -= center[1] * momentum[2] - center[2] * momentum[1];
+        angularMomentum[1] -= center[2] * momentum[0] - center[0] * momentum[2];
+        angularMomentum[2] -= center[0] * momentum[1] - center[1] * momentum[0];
+        double kineticEnergy = totals[SPEED2].value() * (mass / 2);
+        return new Diagnostics(center, halfMassRadius(state, center), momentum, angularMomentum,
+                kineticEnergy, potentialEnergy, 2 * kineticEnergy / Math.abs(potentialEnergy));
+    }
+
+    static double halfMassRadius(ParticleStore state, double[] center) {
+        final int n = state.size();
+        final double[] x = state.x(), y = state.y(), z = state.z();
+        double[] squareDistances = new double[n];
+        for (int i = 0; i < n; i++) {
+            double dx = x[i] - center[0];
+            double dy = y[i] - center[1];
+            double dz = z[i] - center[2];
+            squareDistances[i] = dx * dx + dy * dy + dz * dz;
+        }
+        return Math.sqrt(select(squareDistances, n / 2 - 1));
+    }
+
+    /**
+     * Returns the k-th smallest value in expected linear time, reordering {@code values}.
+     */
+    static double select(double[] values, int k) {
+        int left = 0, right = values.length - 1;
+        while (left < right) {
+            // Median of three pivot, sorted in place so that both ends act as sentinels
+            int middle = (left + right) >>> 1;
+            if (values[middle] < values[left]) swap(values, middle, left);
+            if (values[right] < values[left]) swap(values, right, left);
+            if (values[right] < values[middle]) swap(values, right, middle);
+            double pivot = values[middle];
+            int i = left, j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j)
+                    swap(values, i++, j--);
+            }
+            if (k <= j)
+                right = j;
+            else if (k >= i)
+                left = i;
+            else
+                return values[k];
+        }
+        return values[k];
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double t = values[i];
+        values[i] = values[j];
+        values[j] = t;
+    }
+
+    private static CompensatedSum[] newSums() {
+        CompensatedSum[] sums = new CompensatedSum[SUMS];
+        for (int k = 0; k < SUMS; k++)
+            sums[k] = new CompensatedSum();
+        return sums;
+    }
+}
@@ -0,0 +1,105 @@
+package engine;
+
+import java.util.stream.IntStream;
+
+/**
+ * Exact O(N^2) summation over every pair of particles. Each pair i &lt; j is evaluated once and its
+ * contribution applied to both particles (Newton's third law). Pairs are processed in tiles small
+ * enough to stay in cache, and every worker accumulates its fixed share of tiles into its own partial force
+ * buffer (see {@link PairTiles}), so no two workers ever write to the same slot and the result is reproducible.
+ * The potential energy comes for free from the same inverse distances.
+ */
+public class DirectSumSolver implements ForceSolver {
+    private static final int DEFAULT_TILE_SIZE = 256;
+
+    private final PairTiles tiles;
+    private double[] rowPotential = new double[0];
+
+    public DirectSumSolver() {
+        this(DEFAULT_TILE_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public DirectSumSolver(int tileSize, int workers) {
+        this.tiles = new PairTiles(tileSize, workers);
+    }
+
+    @Override
+    public ForceSolver copy() {
+        return new DirectSumSolver(tiles.tileSize(), tiles.workers());
+    }
+
+    @Override
+    public void computeForces(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        computeForcesAndPotential(x, y, z, GM2, h, forces);
+    }
+
+    @Override
+    public double computeForcesAndPotential(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        final double h2 = h * h;
+        final double inverseDistances = tiles.run(x.length,
+                (worker, iStart, iEnd, jStart, jEnd, fx, fy, fz) -> tile(x, y, z, GM2, h2, iStart, iEnd, jStart, jEnd, fx, fy, fz),
+                forces);
+        return -GM2 * inverseDistances;
+    }
+
+    /**
+     * Half of the pairs and none of the force bookkeeping. Rows run in parallel and are summed in order, so the
+     * result does not depend on the schedule.
+     */
+    @Override
+    public double computePotential(double[] x, double[] y, double[] z, double GM2, double h) {
+        final int n = x.length;
+        if (rowPotential.length != n)
+            rowPotential = new double[n];
+        final double[] rows = rowPotential;
+        final double h2 = h * h;
+        IntStream range = IntStream.range(0, n);
+        ((long) n * n > PARALLEL_THRESHOLD ? range.parallel() : range).forEach(i -> {
+            final double xi = x[i], yi = y[i], zi = z[i];
+            double row = 0;
+            for (int j = i + 1; j < n; j++) {
+                final double dx = xi - x[j];
+                final double dy = yi - y[j];
+                final double dz = zi - z[j];
+                row += 1.0 / Math.sqrt(dx*dx + dy*dy + dz*dz + h2);
+            }
+            rows[i] = row;
+        });
+        double inverseDistances = 0;
+        for (double row : rows)
+            inverseDistances += row;
+        return -GM2 * inverseDistances;
+    }
+
+    private static double tile(double[] x, double[] y, double[] z, double GM2, double h2,
+                               int iStart, int iEnd, int jStart, int jEnd, double[] fx, double[] fy, double[] fz) {
+        final boolean diagonal = iStart == jStart;
+        double inverseDistances = 0;
+        for (int i = iStart; i < iEnd; i++) {
+            final double xi = x[i], yi = y[i], zi = z[i];
+            double fxi = 0, fyi = 0, fzi = 0, potential = 0;
+            for (int j = diagonal ? i + 1 : jStart; j < jEnd; j++) {
+                final double dx = xi - x[j];
+                final double dy = yi - y[j];
+                final double dz = zi - z[j];
+                final double invDist = 1.0 / Math.sqrt(dx*dx + dy*dy + dz*dz + h2);
+                final double scalar = -GM2 * invDist * invDist * invDist;
+                potential += invDist;
+                final double px = dx * scalar;
+                final double py = dy * scalar;
+                final double pz = dz * scalar;
+                fxi += px;
+                fyi += py;
+                fzi += pz;
+                fx[j] -= px;
+                fy[j] -= py;
+                fz[j] -= pz;
+            }
+            fx[i] += fxi;
+            fy[i] += fyi;
+            fz[i] += fzi;
+            inverseDistances += potential;
+        }
+        return inverseDistances;
+    }
+}
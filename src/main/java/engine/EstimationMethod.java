@@ -1,12 +1,20 @@
 package engine;
 
-import java.util.Arrays;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Iterator;
 
 public class EstimationMethod {
+    private static final long CHECKPOINT_MAGIC = 0x5344534B50543031L; // "SDSKPT01"
+    private static final byte VERLET = 0, BEEMAN = 1, GEAR = 2, COMPOSITION = 3, BLOCK = 4;
 
     private final MovementModel model;
     private MovementModel currentModelCopy;
+    private ForceCache currentForceCache;
     private final double endTime;
     private final double deltaT;
     private final double deltaTPow2;
@@ -27,34 +35,283 @@ public class EstimationMethod {
     }
 
     public Iterator<Time> gearEstimation() {
-        return new GearIterator();
+        return gearEstimation(GearIterator.MAX_ORDER);
+    }
+
+    /**
+     * Gear predictor-corrector keeping derivatives up to the given order, between 2 and 5.
+     */
+    public Iterator<Time> gearEstimation(int order) {
+        return new GearIterator(order);
+    }
+
+    /**
+     * Kick-drift-kick leapfrog (velocity Verlet), one force evaluation per step.
+     */
+    public Iterator<Time> leapfrogEstimation() {
+        return new CompositionIterator(CompositionIterator.LEAPFROG);
+    }
+
+    /**
+     * Fourth order composition of three leapfrog sub-steps (Yoshida, Forest-Ruth), one force evaluation per
+     * sub-step.
+     */
+    public Iterator<Time> yoshidaEstimation() {
+        return new CompositionIterator(CompositionIterator.YOSHIDA);
+    }
+
+    /**
+     * Leapfrog with individual block time steps {@code deltaT / 2^level}, with level up to {@code maxLevel}, chosen
+     * per particle as {@code eta |a| / |da/dt|}. Only the particles at the end of their step get new forces, the
+     * others are just drifted. Frames are produced every {@code deltaT}, when every particle is synchronised.
+     */
+    public Iterator<Time> blockEstimation(int maxLevel, double eta) {
+        return new BlockIterator(maxLevel, eta);
+    }
+
+    public Iterator<Time> blockEstimation() {
+        return blockEstimation(BlockIterator.DEFAULT_MAX_LEVEL, BlockIterator.DEFAULT_ETA);
     }
 
     public MovementModel getCurrentModelCopy() {
         return currentModelCopy;
     }
 
-    private class VerletIterator implements Iterator<Time> {
-        private double time;
-        private final double mass;
-        private double[][] prevPos;
-        public VerletIterator() {
-            time = 0;
-            currentModelCopy = model.hardCopyModel();
-            mass = currentModelCopy.mass();
-            prevPos = new double[currentModelCopy.particleCount()][Particle.DIMENSION];
-            double[][] forceMatrix = currentModelCopy.getForceMatrix();
-            // This initial loop is to get x(t - DeltaT) using euler
-            for (Particle p : currentModelCopy.particles()) {
-                for (int i = 0; i < Particle.DIMENSION; i++) {
-                    double pos = p.getPositionAndSpeedPair()[i].pos();
-                    double speed = p.getPositionAndSpeedPair()[i].speed();
-                    double force = forceMatrix[p.getId()][i];
-                    double prevPosAux = pos - deltaT * speed + deltaTPow2 * force / (2 * mass); // euler
-                    prevPos[p.getId()][i] = prevPosAux;
+    /**
+     * Force cache of the last created iterator, its misses count the force evaluations performed.
+     */
+    public ForceCache getForceCache() {
+        return currentForceCache;
+    }
+
+    /**
+     * Serialises everything an estimation needs to continue: time, step count, particle state and the history
+     * kept by the integrator. Resuming it through {@link #resume(byte[])} gives bit-identical results to
+     * never stopping, as long as the force solver is deterministic.
+     *
+     * @param seed stored as is, for callers that need to regenerate the initial conditions
+     */
+    public byte[] checkpoint(Iterator<Time> estimation, long seed) {
+        if (!(estimation instanceof StepIterator stepper))
+            throw new IllegalArgumentException("Iterator was not created by an EstimationMethod");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(CHECKPOINT_MAGIC);
+            out.writeLong(seed);
+            out.writeDouble(deltaT);
+            out.writeInt(stepper.N);
+            stepper.writeKind(out);
+            out.writeDouble(stepper.time);
+            out.writeLong(stepper.steps);
+            for (int d = 0; d < Particle.DIMENSION; d++) {
+                writeArray(out, stepper.state.position(d));
+                writeArray(out, stepper.state.speed(d));
+            }
+            stepper.writeHistory(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Creates an iterator of the checkpointed kind that continues where the checkpoint was taken. This method must
+     * have the same time step and a model with the same particle count and force law as the checkpointed one;
+     * the end time may differ.
+     */
+    public Iterator<Time> resume(byte[] checkpoint) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(checkpoint))) {
+            if (in.readLong() != CHECKPOINT_MAGIC)
+                throw new IllegalArgumentException("Not a checkpoint");
+            in.readLong();
+            double checkpointDeltaT = in.readDouble();
+            int particleCount = in.readInt();
+            if (checkpointDeltaT != deltaT || particleCount != model.particleCount())
+                throw new IllegalArgumentException("Checkpoint of %d particles with deltaT=%s does not match %d particles with deltaT=%s"
+                        .formatted(particleCount, checkpointDeltaT, model.particleCount(), deltaT));
+            StepIterator stepper = switch (in.readByte()) {
+                case VERLET -> new VerletIterator();
+                case BEEMAN -> new BeemanIterator();
+                case GEAR -> new GearIterator(in.readInt());
+                case COMPOSITION -> new CompositionIterator(readArray(in, in.readInt()));
+                case BLOCK -> new BlockIterator(in.readInt(), in.readDouble());
+                default -> throw new IllegalArgumentException("Unknown integrator in checkpoint");
+            };
+            stepper.time = in.readDouble();
+            stepper.steps = in.readLong();
+            for (int d = 0; d < Particle.DIMENSION; d++) {
+                readInto(in, stepper.state.position(d));
+                readInto(in, stepper.state.speed(d));
+            }
+            stepper.state.touch();
+            stepper.readHistory(in);
+            return stepper;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated checkpoint", e);
+        }
+    }
+
+    /**
+     * Time reached by an iterator of this method, such as the checkpoint time of one returned by {@link #resume}.
+     */
+    public double currentTime(Iterator<Time> estimation) {
+        if (!(estimation instanceof StepIterator stepper))
+            throw new IllegalArgumentException("Iterator was not created by an EstimationMethod");
+        return stepper.time;
+    }
+
+    /**
+     * Seed stored by {@link #checkpoint(Iterator, long)}.
+     */
+    public static long checkpointSeed(byte[] checkpoint) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(checkpoint))) {
+            if (in.readLong() != CHECKPOINT_MAGIC)
+                throw new IllegalArgumentException("Not a checkpoint");
+            return in.readLong();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated checkpoint", e);
+        }
+    }
+
+    private static void writeArray(DataOutputStream out, double[] values) throws IOException {
+        for (double value : values)
+            out.writeDouble(value);
+    }
+
+    private static void writeMatrix(DataOutputStream out, double[][] values) throws IOException {
+        for (double[] row : values)
+            writeArray(out, row);
+    }
+
+    private static double[] readArray(DataInputStream in, int length) throws IOException {
+        double[] values = new double[length];
+        readInto(in, values);
+        return values;
+    }
+
+    private static void readInto(DataInputStream in, double[] values) throws IOException {
+        for (int i = 0; i < values.length; i++)
+            values[i] = in.readDouble();
+    }
+
+    private static void readInto(DataInputStream in, double[][] values) throws IOException {
+        for (double[] row : values)
+            readInto(in, row);
+    }
+
+    /**
+     * Runs an estimation to the end, calling every sampling whenever it is due. Frames are only built on
+     * sampled steps.
+     *
+     * @param estimation iterator returned by one of the estimation methods of this class
+     * @return the number of steps performed
+     */
+    public long run(Iterator<Time> estimation, Sampling... samplings) {
+        if (!(estimation instanceof StepIterator stepper))
+            throw new IllegalArgumentException("Iterator was not created by an EstimationMethod");
+        // Time based samplings are due at every multiple of their interval, so a fresh estimation samples on its
+        // first step and a resumed one lands on the deadline the uninterrupted run was waiting for
+        long[] nextSamples = new long[samplings.length];
+        for (int k = 0; k < samplings.length; k++) {
+            if (stepper.steps > 0 && samplings[k].isTimeBased()) {
+                double interval = samplings[k].timeInterval();
+                nextSamples[k] = nextSample(Math.max(0, (long) (stepper.time / interval) - 1), interval, stepper.time);
+            }
+        }
+        if (Metrics.ENABLED)
+            Metrics.runStarted(stepper.time, endTime);
+        while (stepper.hasNext()) {
+            stepper.advance();
+            Time frame = null;
+            for (int k = 0; k < samplings.length; k++) {
+                Sampling sampling = samplings[k];
+                boolean due;
+                if (sampling.isTimeBased()) {
+                    due = isDue(nextSamples[k], sampling.timeInterval(), stepper.time);
+                    if (due)
+                        nextSamples[k] = nextSample(nextSamples[k], sampling.timeInterval(), stepper.time);
+                } else {
+                    due = (stepper.steps - 1) % sampling.stepInterval() == 0;
+                }
+                if (due) {
+                    long start = Metrics.ENABLED ? Metrics.start() : 0;
+                    if (frame == null)
+                        frame = stepper.frame();
+                    sampling.observer().observe(frame, stepper.modelCopy);
+                    if (Metrics.ENABLED)
+                        Metrics.end(Metrics.Phase.OBSERVERS, start);
                 }
             }
         }
+        return stepper.steps;
+    }
+
+    /**
+     * Whether deadline {@code sample * interval} is reached at {@code time}. Half a step of tolerance picks the step
+     * closest to the deadline and absorbs the rounding accumulated in the time counter.
+     */
+    private boolean isDue(long sample, double interval, double time) {
+        return time >= sample * interval - deltaT / 2;
+    }
+
+    /**
+     * First deadline from {@code sample} on that is not due yet at {@code time}, skipping those a step longer than
+     * the interval jumped over.
+     */
+    private long nextSample(long sample, double interval, double time) {
+        while (isDue(sample, interval, time))
+            sample++;
+        return sample;
+    }
+
+    private abstract class StepIterator implements Iterator<Time> {
+        protected double time;
+        protected long steps;
+        protected final MovementModel modelCopy;
+        protected final ForceCache forceCache;
+        protected final ParticleStore state;
+        protected final int N;
+
+        StepIterator() {
+            time = 0;
+            modelCopy = model.hardCopyModel();
+            currentModelCopy = modelCopy;
+            forceCache = new ForceCache(modelCopy);
+            currentForceCache = forceCache;
+            state = modelCopy.state();
+            N = state.size();
+        }
+
+        /**
+         * Advances the model copy by one time step, including {@code time}.
+         */
+        abstract void step();
+
+        final void advance() {
+            long start = Metrics.ENABLED ? Metrics.start() : 0;
+            step();
+            steps++;
+            if (Metrics.ENABLED) {
+                Metrics.end(Metrics.Phase.STEP, start);
+                Metrics.stepped(time);
+            }
+        }
+
+        Time frame() {
+            return new Time(time, modelCopy.particles());
+        }
+
+        /**
+         * Writes the tag and construction parameters read back by {@link EstimationMethod#resume(byte[])}.
+         */
+        abstract void writeKind(DataOutputStream out) throws IOException;
+
+        /**
+         * Integrator state that cannot be derived from the particle state, restored after construction.
+         */
+        abstract void writeHistory(DataOutputStream out) throws IOException;
+
+        abstract void readHistory(DataInputStream in) throws IOException;
 
         @Override
         public boolean hasNext() {
@@ -63,247 +320,495 @@ public class EstimationMethod {
 
         @Override
         public Time next() {
-            double[][] forceMatrix = currentModelCopy.getForceMatrix();
-            double[][] currentPos = new double[currentModelCopy.particleCount()][Particle.DIMENSION];
-            for (Particle p : currentModelCopy.particles()) {
-                for (int i = 0; i < Particle.DIMENSION; i++) {
-                    double pos = p.getPositionAndSpeedPair()[i].pos();
-                    double force = forceMatrix[p.getId()][i];
-                    currentPos[p.getId()][i] = pos;
-                    double nextPos = 2 * pos - prevPos[p.getId()][i] + deltaTPow2 * force / mass;
-                    p.updatePosition(nextPos, i);
+            advance();
+            return frame();
+        }
+    }
+
+    private class VerletIterator extends StepIterator {
+        private final double mass;
+        private final double[][] prevPos;
+        private final double[][] forces;
+
+        public VerletIterator() {
+            mass = modelCopy.mass();
+            prevPos = new double[Particle.DIMENSION][N];
+            forces = new double[Particle.DIMENSION][N];
+            forceCache.computeForces(forces);
+            // This initial loop is to get x(t - DeltaT) using euler
+            for (int d = 0; d < Particle.DIMENSION; d++) {
+                double[] pos = state.position(d);
+                double[] speed = state.speed(d);
+                double[] force = forces[d];
+                double[] prev = prevPos[d];
+                for (int i = 0; i < N; i++) {
+                    prev[i] = pos[i] - deltaT * speed[i] + deltaTPow2 * force[i] / (2 * mass); // euler
                 }
             }
-            for (Particle p : currentModelCopy.particles()) {
-                Particle.PosSpeedPair[] newPosAndSpeed = new Particle.PosSpeedPair[Particle.DIMENSION];
-                for (int i = 0; i < Particle.DIMENSION; i++) {
-                    double speed = (p.getPositionAndSpeedPair()[i].pos() - prevPos[p.getId()][i]) / (2 * deltaT);
-                    newPosAndSpeed[i] = new Particle.PosSpeedPair(p.getPositionAndSpeedPair()[i].pos(), speed);
+        }
+
+        @Override
+        void step() {
+            forceCache.computeForces(forces);
+            for (int d = 0; d < Particle.DIMENSION; d++) {
+                double[] pos = state.position(d);
+                double[] speed = state.speed(d);
+                double[] force = forces[d];
+                double[] prev = prevPos[d];
+                for (int i = 0; i < N; i++) {
+                    double currentPos = pos[i];
+                    double nextPos = 2 * currentPos - prev[i] + deltaTPow2 * force[i] / mass;
+                    speed[i] = (nextPos - prev[i]) / (2 * deltaT);
+                    pos[i] = nextPos;
+                    prev[i] = currentPos;
                 }
-                p.setPositionAndSpeedPair(newPosAndSpeed);
             }
-            prevPos = Arrays.stream(currentPos)
-                    .map(double[]::clone)
-                    .toArray(double[][]::new);
+            state.touch();
             time += deltaT;
-            return new Time(time, currentModelCopy.particles());
+        }
+
+        @Override
+        void writeKind(DataOutputStream out) throws IOException {
+            out.writeByte(VERLET);
+        }
+
+        @Override
+        void writeHistory(DataOutputStream out) throws IOException {
+            writeMatrix(out, prevPos);
+        }
+
+        @Override
+        void readHistory(DataInputStream in) throws IOException {
+            readInto(in, prevPos);
         }
     }
 
-    private class BeemanIterator implements Iterator<Time> {
-        private double time;
+    private class BeemanIterator extends StepIterator {
         private final double mass;
-        private final Particle.PosSpeedPair[][] prevPosAndSpeed;
-        private double[][] prevForceMatrix;
+        private final double[][] prevSpeeds;
+        // a(t - DeltaT), a(t) and a(t + DeltaT), rotated at the end of every step
+        private double[][] prevForces;
+        private double[][] forces;
+        private final double[][] nextForces;
 
         public BeemanIterator() {
-            time = 0;
-            currentModelCopy = model.hardCopyModel();
-            mass = currentModelCopy.mass();
-            prevPosAndSpeed = new Particle.PosSpeedPair[currentModelCopy.particleCount()][Particle.DIMENSION];
-            prevForceMatrix = currentModelCopy.getForceMatrix();
-            // This initial loop is to get a(t - DeltaT) using euler
-            for (Particle p : currentModelCopy.particles()) {
-                double[] forceArray = prevForceMatrix[p.getId()];
-                for (int i = 0; i < Particle.DIMENSION; i++) {
-                    double pos = p.getPositionAndSpeedPair()[i].pos();
-                    double speed = p.getPositionAndSpeedPair()[i].speed();
-                    double force = forceArray[i];
-                    double prevPos = pos - deltaT * speed + force * deltaTPow2 / (2 * mass);
-                    double prevSpeed = speed - deltaT * force / mass;
-                    Particle.PosSpeedPair prevPosAndSpeedAux = new Particle.PosSpeedPair(prevPos, prevSpeed);
-                    prevPosAndSpeed[p.getId()][i] = prevPosAndSpeedAux;
+            mass = modelCopy.mass();
+            prevSpeeds = new double[Particle.DIMENSION][N];
+            prevForces = new double[Particle.DIMENSION][N];
+            forces = new double[Particle.DIMENSION][N];
+            nextForces = new double[Particle.DIMENSION][N];
+            // a(t - DeltaT) is approximated by the force at t = 0
+            forceCache.computeForces(prevForces);
+        }
+
+        @Override
+        void step() {
+            forceCache.computeForces(forces);
+            for (int d = 0; d < Particle.DIMENSION; d++) {
+                double[] pos = state.position(d);
+                double[] speed = state.speed(d);
+                double[] force = forces[d];
+                double[] prevForce = prevForces[d];
+                double[] prevSpeed = prevSpeeds[d];
+                for (int i = 0; i < N; i++) {
+                    double nextPos = pos[i] + speed[i] * deltaT + 2 * deltaTPow2 * (force[i] / (3 * mass)) - deltaTPow2 * prevForce[i] / (6 * mass);
+                    double nextSpeedPred = speed[i] + 3 * deltaT * force[i] / (2 * mass) - deltaT * prevForce[i] / (2 * mass);
+                    prevSpeed[i] = speed[i];
+                    pos[i] = nextPos;
+                    speed[i] = nextSpeedPred;
+                }
+            }
+            state.touch();
+            forceCache.computeForces(nextForces);
+            for (int d = 0; d < Particle.DIMENSION; d++) {
+                double[] speed = state.speed(d);
+                double[] nextForce = nextForces[d];
+                double[] force = forces[d];
+                double[] prevForce = prevForces[d];
+                double[] prevSpeed = prevSpeeds[d];
+                for (int i = 0; i < N; i++) {
+                    speed[i] = prevSpeed[i] + deltaT * nextForce[i] / (3 * mass) + 5 * deltaT * force[i] / (6 * mass) - deltaT * prevForce[i] / (6 * mass);
                 }
             }
+            state.touchSpeeds();
+            time += deltaT;
+            double[][] swap = prevForces;
+            prevForces = forces;
+            forces = swap;
         }
 
         @Override
-        public boolean hasNext() {
-            return time <= endTime;
+        void writeKind(DataOutputStream out) throws IOException {
+            out.writeByte(BEEMAN);
         }
 
         @Override
-        public Time next() {
-            double[][] forceMatrix = currentModelCopy.getForceMatrix();
-            for (Particle p : currentModelCopy.particles()) {
-                Particle.PosSpeedPair[] newPosAndSpeed = new Particle.PosSpeedPair[Particle.DIMENSION];
-                double[] forceArray = forceMatrix[p.getId()];
-                for (int i = 0; i < Particle.DIMENSION; i++) {
-                    double pos = p.getPositionAndSpeedPair()[i].pos();
-                    double speed = p.getPositionAndSpeedPair()[i].speed();
-                    double force = forceArray[i];
-                    double prevForce = prevForceMatrix[p.getId()][i];
-                    double nextPos = pos + speed * deltaT + 2 * deltaTPow2 * (force / (3 * mass)) - deltaTPow2 * prevForce / (6 * mass);
-                    double nextSpeedPred = speed + 3 * deltaT * force / (2 * mass) - deltaT * prevForce / (2 * mass);
-                    newPosAndSpeed[i] = new Particle.PosSpeedPair(nextPos,nextSpeedPred);
-                    prevPosAndSpeed[p.getId()][i] = new Particle.PosSpeedPair(pos, speed);
+        void writeHistory(DataOutputStream out) throws IOException {
+            writeMatrix(out, prevForces);
+        }
+
+        @Override
+        void readHistory(DataInputStream in) throws IOException {
+            readInto(in, prevForces);
+        }
+    }
+
+    private class GearIterator extends StepIterator {
+        private static final int MIN_ORDER = 2;
+        private static final int MAX_ORDER = 5;
+        // Corrector coefficients indexed by order, for forces depending on positions only
+        private static final double[][] POSITION_CORRECTORS = {
+                null, null,
+                {0, 1, 1},
+                {1.0 / 6.0, 5.0 / 6.0, 1, 1.0 / 3.0},
+                {19.0 / 120.0, 3.0 / 4.0, 1, 1.0 / 2.0, 1.0 / 12.0},
+                {3.0 / 20.0, 251.0 / 360.0, 1, 11.0 / 18.0, 1.0 / 6.0, 1.0 / 60.0}
+        };
+        // Only a0 changes when the force also depends on the speed
+        private static final double[] SPEED_DEPENDANT_A0 = {0, 0, 0, 1.0 / 6.0, 19.0 / 90.0, 3.0 / 16.0};
+
+        private final int DIM = Particle.DIMENSION;
+        private final int coefficientAmount;
+        private final double[][] predictor;
+        private final double[] corrector;
+        // gears[q][d * N + i] holds the q-th derivative of particle i along axis d scaled by deltaT^q / q!, which
+        // turns the predictor into the Pascal triangle and the corrector into the bare Gear coefficients.
+        // predictions is the second buffer: it receives the predicted values, is corrected in place and then
+        // swapped with gears.
+        private double[][] gears;
+        private double[][] predictions;
+        private final double[][] r2Computed;
+
+        public GearIterator(int order) {
+            if (order < MIN_ORDER || order > MAX_ORDER)
+                throw new IllegalArgumentException("Gear order must be between %d and %d".formatted(MIN_ORDER, MAX_ORDER));
+            coefficientAmount = order + 1;
+            gears = new double[coefficientAmount][DIM * N];
+            predictions = new double[coefficientAmount][DIM * N];
+            r2Computed = new double[DIM][N];
+
+            predictor = new double[coefficientAmount][coefficientAmount];
+            for (int j = 0; j < coefficientAmount; j++) {
+                predictor[0][j] = 1;
+                for (int q = 1; q <= j; q++)
+                    predictor[q][j] = predictor[q - 1][j - 1] + (q < j ? predictor[q][j - 1] : 0);
+            }
+            corrector = POSITION_CORRECTORS[order].clone();
+            if (modelCopy.isForceFunctionSpeedDependant())
+                corrector[0] = SPEED_DEPENDANT_A0[order];
+
+            // Orders the model keeps at zero are neither computed nor copied, their gears start at zero
+            int highestOrder = Math.min(order, modelCopy.highestNonZeroDerivative());
+            double[][][] initialValues = new double[highestOrder + 1][][];
+            for (int q = 2; q <= highestOrder; q++)
+                initialValues[q] = new double[DIM][N];
+            modelCopy.computeDerivatives(highestOrder, initialValues);
+            double scale = 1;
+            for (int q = 0; q <= highestOrder; q++) {
+                if (q > 0)
+                    scale *= deltaT / q;
+                for (int d = 0; d < DIM; d++) {
+                    double[] source = q == 0 ? state.position(d) : q == 1 ? state.speed(d) : initialValues[q][d];
+                    double[] gear = gears[q];
+                    for (int i = 0; i < N; i++)
+                        gear[d * N + i] = source[i] * scale;
+                }
+            }
+        }
+
+        @Override
+        void step() {
+            final int size = DIM * N;
+            for (int q = 0; q < coefficientAmount; q++) {
+                double[] prediction = predictions[q];
+                System.arraycopy(gears[q], 0, prediction, 0, size);
+                for (int j = q + 1; j < coefficientAmount; j++) {
+                    double coefficient = predictor[q][j];
+                    double[] gear = gears[j];
+                    for (int idx = 0; idx < size; idx++)
+                        prediction[idx] += coefficient * gear[idx];
                 }
-                p.setPositionAndSpeedPair(newPosAndSpeed);
             }
-            double[][] nextForceMatrix = currentModelCopy.getForceMatrix();
-            for (Particle p : currentModelCopy.particles()) {
-                Particle.PosSpeedPair[] newPosAndSpeed = new Particle.PosSpeedPair[Particle.DIMENSION];
-                double[] nextForceArray = nextForceMatrix[p.getId()];
-                double[] forceArray = forceMatrix[p.getId()];
-                double[] prevForceArray = prevForceMatrix[p.getId()];
-                for (int i = 0; i < Particle.DIMENSION; i++) {
-                    double speed = prevPosAndSpeed[p.getId()][i].speed();
-                    double nextSpeed = speed + deltaT * nextForceArray[i] / (3 * mass) + 5 * deltaT * forceArray[i] / (6 * mass) - deltaT * prevForceArray[i] / (6 * mass);
-                    newPosAndSpeed[i] = new Particle.PosSpeedPair(p.getPositionAndSpeedPair()[i].pos(), nextSpeed);
+            loadState(predictions);
+
+            forceCache.computeR2(r2Computed);
+
+            final double r2Scale = deltaTPow2 / 2;
+            double[] r2Predicted = predictions[2];
+            for (int d = 0; d < DIM; d++) {
+                double[] r2 = r2Computed[d];
+                int offset = d * N;
+                for (int i = 0; i < N; i++)
+                    r2[i] = r2[i] * r2Scale - r2Predicted[offset + i];
+            }
+            for (int q = 0; q < coefficientAmount; q++) {
+                double coefficient = corrector[q];
+                double[] prediction = predictions[q];
+                for (int d = 0; d < DIM; d++) {
+                    double[] deltaR2 = r2Computed[d];
+                    int offset = d * N;
+                    for (int i = 0; i < N; i++)
+                        prediction[offset + i] += coefficient * deltaR2[i];
                 }
-                p.setPositionAndSpeedPair(newPosAndSpeed);
             }
+            double[][] swap = gears;
+            gears = predictions;
+            predictions = swap;
+            loadState(gears);
+
             time += deltaT;
-            prevForceMatrix = forceMatrix;
-            return new Time(time, currentModelCopy.particles());
+        }
+
+        @Override
+        void writeKind(DataOutputStream out) throws IOException {
+            out.writeByte(GEAR);
+            out.writeInt(coefficientAmount - 1);
+        }
+
+        @Override
+        void writeHistory(DataOutputStream out) throws IOException {
+            writeMatrix(out, gears);
+        }
+
+        @Override
+        void readHistory(DataInputStream in) throws IOException {
+            readInto(in, gears);
+        }
+
+        private void loadState(double[][] values) {
+            for (int d = 0; d < DIM; d++) {
+                System.arraycopy(values[0], d * N, state.position(d), 0, N);
+                double[] speed = state.speed(d);
+                double[] scaledSpeed = values[1];
+                int offset = d * N;
+                for (int i = 0; i < N; i++)
+                    speed[i] = scaledSpeed[offset + i] / deltaT;
+            }
+            state.touch();
         }
     }
 
-    private class GearIterator implements Iterator<Time> {
-        private double time;
-        // Previous values
-        private final double[][][] prevGears;
-        private final static int COEFFICIENT_AMOUNT = 6;
-        int N;
-        int DIM = Particle.DIMENSION;
-        // Predictions
-        double[][] posPred;
-        double[][] velPred;
-        double[][] r2Pred;
-        double[][] r3Pred;
-        double[][] r4Pred;
-        double[][] r5Pred;
-
-        public GearIterator() {
-            time = 0;
-            currentModelCopy = model.hardCopyModel();
-            N = currentModelCopy.particles().size();
-            posPred = new double[N][DIM];
-            velPred = new double[N][DIM];
-            r2Pred = new double[N][DIM];
-            r3Pred = new double[N][DIM];
-            r4Pred = new double[N][DIM];
-            r5Pred = new double[N][DIM];
-
-            // for each particle and axis, I store it's previous coefficients
-            prevGears = new double[currentModelCopy.particles().size()][Particle.DIMENSION][COEFFICIENT_AMOUNT];
-            double[][] R2Matrix = currentModelCopy.getR2Matrix();
-            double[][] R3Matrix = currentModelCopy.getR3Matrix();
-            double[][] R4Matrix = currentModelCopy.getR4Matrix();
-            double[][] R5Matrix = currentModelCopy.getR5Matrix();
-            for (Particle p : currentModelCopy.particles()) {
-                for (int i = 0; i < Particle.DIMENSION; i++) {
-                    Particle.PosSpeedPair pair = p.getPositionAndSpeedPair()[i];
-                    prevGears[p.getId()][i][0] = pair.pos();
-                    prevGears[p.getId()][i][1] = pair.speed();
-                    prevGears[p.getId()][i][2] = R2Matrix[p.getId()][i];
-                    prevGears[p.getId()][i][3] = R3Matrix[p.getId()][i];
-                    prevGears[p.getId()][i][4] = R4Matrix[p.getId()][i];
-                    prevGears[p.getId()][i][5] = R5Matrix[p.getId()][i];
+    /**
+     * Symmetric composition of kick-drift-kick sub-steps of {@code weight * deltaT}. The closing kick of a sub-step
+     * and the opening one of the next share the force evaluated after the drift, so each sub-step costs one
+     * evaluation and the scheme stays symplectic.
+     */
+    private class CompositionIterator extends StepIterator {
+        private static final double[] LEAPFROG = {1};
+        private static final double[] YOSHIDA;
+
+        static {
+            double cubeRoot2 = Math.cbrt(2);
+            double outer = 1 / (2 - cubeRoot2);
+            YOSHIDA = new double[]{outer, -cubeRoot2 * outer, outer};
+        }
+
+        private final double[] weights;
+        private final double inverseMass;
+        private final double[][] forces;
+
+        public CompositionIterator(double[] weights) {
+            this.weights = weights;
+            inverseMass = 1 / modelCopy.mass();
+            forces = new double[Particle.DIMENSION][N];
+            forceCache.computeForces(forces);
+        }
+
+        @Override
+        void step() {
+            for (double weight : weights) {
+                double subStep = weight * deltaT;
+                kick(subStep / 2);
+                for (int d = 0; d < Particle.DIMENSION; d++) {
+                    double[] pos = state.position(d);
+                    double[] speed = state.speed(d);
+                    for (int i = 0; i < N; i++)
+                        pos[i] += speed[i] * subStep;
                 }
+                state.touch();
+                forceCache.computeForces(forces);
+                kick(subStep / 2);
             }
+            time += deltaT;
+        }
 
+        @Override
+        void writeKind(DataOutputStream out) throws IOException {
+            out.writeByte(COMPOSITION);
+            out.writeInt(weights.length);
+            writeArray(out, weights);
         }
 
         @Override
-        public boolean hasNext() {
-            return time <= endTime;
+        void writeHistory(DataOutputStream out) throws IOException {
+            writeMatrix(out, forces);
         }
 
         @Override
-        public Time next() {
-            for (Particle p : currentModelCopy.particles()) {
-                int id = p.getId();
-                Particle.PosSpeedPair[] newPosAndSpeed = new Particle.PosSpeedPair[DIM];
-                for (int d = 0; d < DIM; d++) {
-                    double pos = prevGears[id][d][0];
-                    double speed = prevGears[id][d][1];
-                    double r2 = prevGears[id][d][2];
-                    double r3 = prevGears[id][d][3];
-                    double r4 = prevGears[id][d][4];
-                    double r5 = prevGears[id][d][5];
-
-                    posPred[id][d] = taylorValueForList(new double[] {pos, speed, r2, r3, r4, r5});
-                    velPred[id][d] = taylorValueForList(new double[] {speed, r2, r3, r4, r5});
-                    r2Pred[id][d] = taylorValueForList(new double[] {r2, r3, r4, r5});
-                    r3Pred[id][d] = taylorValueForList(new double[] {r3, r4, r5});
-                    r4Pred[id][d] = taylorValueForList(new double[] {r4, r5});
-                    r5Pred[id][d] = taylorValueForList(new double[] {r5});
-                    newPosAndSpeed[d] = new Particle.PosSpeedPair(posPred[id][d], velPred[id][d]);
-                }
-                p.setPositionAndSpeedPair(newPosAndSpeed);
+        void readHistory(DataInputStream in) throws IOException {
+            readInto(in, forces);
+        }
+
+        private void kick(double duration) {
+            double scale = duration * inverseMass;
+            for (int d = 0; d < Particle.DIMENSION; d++) {
+                double[] speed = state.speed(d);
+                double[] force = forces[d];
+                for (int i = 0; i < N; i++)
+                    speed[i] += force[i] * scale;
             }
+            state.touchSpeeds();
+        }
+    }
 
-            double[][] r2Computed = getCurrentModelCopy().getR2Matrix();
+    private class BlockIterator extends StepIterator {
+        private static final int DEFAULT_MAX_LEVEL = 10;
+        private static final double DEFAULT_ETA = 0.05;
+        private static final int MAX_LEVEL = 40;
 
-            for (Particle p : currentModelCopy.particles()) {
-                int id = p.getId();
-                Particle.PosSpeedPair[] newPosAndSpeed = new Particle.PosSpeedPair[DIM];
+        private final int maxLevel;
+        private final double eta;
+        private final double mass;
+        private final double tickDuration;
+        private final long ticksPerStep;
+        private final int[] level;
+        private final long[] nextTick;
+        // Acceleration of the last evaluation of every particle, to estimate its derivative
+        private final double[][] accelerations;
+        // Leapfrog half step speeds used for drifting, the state holds the synchronised ones
+        private final double[][] driftSpeeds;
+        private final double[][] activeForces;
+        private final int[] active;
+        private long tick;
+
+        public BlockIterator(int maxLevel, double eta) {
+            if (maxLevel < 0 || maxLevel > MAX_LEVEL)
+                throw new IllegalArgumentException("Block level must be between 0 and %d".formatted(MAX_LEVEL));
+            if (eta <= 0)
+                throw new IllegalArgumentException("Time step accuracy parameter must be positive");
+            this.maxLevel = maxLevel;
+            this.eta = eta;
+            mass = modelCopy.mass();
+            ticksPerStep = 1L << maxLevel;
+            tickDuration = deltaT / ticksPerStep;
+            level = new int[N];
+            nextTick = new long[N];
+            accelerations = new double[Particle.DIMENSION][N];
+            driftSpeeds = new double[Particle.DIMENSION][N];
+            activeForces = new double[Particle.DIMENSION][N];
+            active = new int[N];
+
+            // Without a derivative yet every particle starts on the finest level and coarsens as it is estimated
+            forceCache.computeR2(accelerations);
+            for (int i = 0; i < N; i++) {
+                level[i] = maxLevel;
+                nextTick[i] = 1;
+            }
+            for (int d = 0; d < Particle.DIMENSION; d++) {
+                double[] speed = state.speed(d);
+                double[] driftSpeed = driftSpeeds[d];
+                double[] acceleration = accelerations[d];
+                for (int i = 0; i < N; i++)
+                    driftSpeed[i] = speed[i] + acceleration[i] * tickDuration / 2;
+            }
+        }
 
-                for (int d = 0; d < DIM; d++) {
-                    double rPred = posPred[id][d];
-                    double r1Pred = velPred[id][d];
-                    double r2p = r2Pred[id][d];
-                    double r3p = r3Pred[id][d];
-                    double r4p = r4Pred[id][d];
-                    double r5p = r5Pred[id][d];
-
-                    double deltaA = r2Computed[id][d] - r2p;
-                    double deltaR2 = deltaA * deltaTPow2 / 2;
-
-                    double posCorr = rPred + correction(0, deltaR2);
-                    double speedCorr = r1Pred + correction(1, deltaR2);
-
-                    prevGears[id][d][0] = posCorr;
-                    prevGears[id][d][1] = speedCorr;
-                    prevGears[id][d][2] = r2p + correction(2, deltaR2);
-                    prevGears[id][d][3] = r3p + correction(3, deltaR2);
-                    prevGears[id][d][4] = r4p + correction(4, deltaR2);
-                    prevGears[id][d][5] = r5p + correction(5, deltaR2);
-
-                    newPosAndSpeed[d] = new Particle.PosSpeedPair(posCorr, speedCorr);
+        @Override
+        void step() {
+            final long end = tick + ticksPerStep;
+            while (tick < end) {
+                long next = end;
+                for (int i = 0; i < N; i++)
+                    next = Math.min(next, nextTick[i]);
+                drift((next - tick) * tickDuration);
+                tick = next;
+
+                int activeCount = 0;
+                for (int i = 0; i < N; i++)
+                    if (nextTick[i] == tick)
+                        active[activeCount++] = i;
+                long start = Metrics.ENABLED ? Metrics.start() : 0;
+                modelCopy.computeForces(active, activeCount, activeForces);
+                if (Metrics.ENABLED) {
+                    Metrics.end(Metrics.Phase.FORCES, start);
+                    Metrics.addPairs((long) activeCount * (N - 1));
                 }
-                p.setPositionAndSpeedPair(newPosAndSpeed);
+                for (int k = 0; k < activeCount; k++)
+                    kick(active[k]);
+                state.touchSpeeds();
             }
-
             time += deltaT;
-            return new Time(time, currentModelCopy.particles());
         }
 
+        @Override
+        void writeKind(DataOutputStream out) throws IOException {
+            out.writeByte(BLOCK);
+            out.writeInt(maxLevel);
+            out.writeDouble(eta);
+        }
 
-        private long factorial(int n) {
-            if (n <= 1)
-                return 1;
-            long toReturn = 1;
-            for (int i = 2; i <= n; i++) {
-                toReturn *= i;
+        @Override
+        void writeHistory(DataOutputStream out) throws IOException {
+            out.writeLong(tick);
+            for (int i = 0; i < N; i++) {
+                out.writeInt(level[i]);
+                out.writeLong(nextTick[i]);
             }
-            return toReturn;
+            writeMatrix(out, accelerations);
+            writeMatrix(out, driftSpeeds);
         }
 
-        private double taylorValueForList(double[] derivatives) {
-            double total = 0;
-            for (int i = 0; i < derivatives.length; i++) {
-                total += derivatives[i] * Math.pow(deltaT, i) / factorial(i);
+        @Override
+        void readHistory(DataInputStream in) throws IOException {
+            tick = in.readLong();
+            for (int i = 0; i < N; i++) {
+                level[i] = in.readInt();
+                nextTick[i] = in.readLong();
             }
-            return total;
+            readInto(in, accelerations);
+            readInto(in, driftSpeeds);
         }
 
-        private double correction(int q, double deltaR2) {
-            // For Gear Order 5
-            double a0;
-            if (currentModelCopy.isForceFunctionSpeedDependant())
-                a0 = 3.0 / 16.0;
-            else
-                a0 = 3.0 / 20.0;
-            double a1 = 251.0 / 360.0;
-            double a2 = 1.0;
-            double a3 = 11.0 / 18.0;
-            double a4 = 1.0 / 6.0;
-            double a5 = 1.0 / 60.0;
+        private void drift(double duration) {
+            for (int d = 0; d < Particle.DIMENSION; d++) {
+                double[] pos = state.position(d);
+                double[] driftSpeed = driftSpeeds[d];
+                for (int i = 0; i < N; i++)
+                    pos[i] += driftSpeed[i] * duration;
+            }
+            state.touch();
+        }
+
+        /**
+         * Closes the step of an active particle with its new force, picks its next level and opens the next step.
+         */
+        private void kick(int i) {
+            double oldStep = (1L << (maxLevel - level[i])) * tickDuration;
+            double acceleration2 = 0, derivative2 = 0;
+            for (int d = 0; d < Particle.DIMENSION; d++) {
+                double acceleration = activeForces[d][i] / mass;
+                double derivative = (acceleration - accelerations[d][i]) / oldStep;
+                acceleration2 += acceleration * acceleration;
+                derivative2 += derivative * derivative;
+                accelerations[d][i] = acceleration;
+                driftSpeeds[d][i] += acceleration * oldStep / 2;
+                state.speed(d)[i] = driftSpeeds[d][i];
+            }
 
-            double[] aCoefficients = new double[] {a0, a1, a2, a3, a4, a5};
-            return aCoefficients[q] * deltaR2 * factorial(q) / Math.pow(deltaT, q);
+            double desired = derivative2 == 0 ? deltaT : eta * Math.sqrt(acceleration2 / derivative2);
+            int newLevel = desired >= deltaT ? 0 : Math.min(maxLevel, (int) Math.ceil(Math.log(deltaT / desired) / Math.log(2)));
+            // Moving to a longer step is only allowed where that step is aligned with the hierarchy
+            while (newLevel < level[i] && tick % (1L << (maxLevel - newLevel)) != 0)
+                newLevel++;
+            // and only one level at a time, the derivative estimate lags behind
+            newLevel = Math.max(newLevel, level[i] - 1);
+            long stride = 1L << (maxLevel - newLevel);
+            level[i] = newLevel;
+            nextTick[i] = tick + stride;
+
+            double newStep = stride * tickDuration;
+            for (int d = 0; d < Particle.DIMENSION; d++)
+                driftSpeeds[d][i] += accelerations[d][i] * newStep / 2;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package engine;
+
+import java.util.stream.IntStream;
+
+/**
+ * In place radix-2 complex FFT of a cubic grid of side {@code size}, stored as separate real and imaginary arrays
+ * indexed {@code (x * size + y) * size + z}. Each axis is transformed as a set of independent lines, and the lines
+ * of a plane are handed to one worker, so the passes parallelise across planes.
+ * <p>
+ * Both directions accept an {@code extent}: the forward transform assumes the input is zero outside
+ * {@code [0, extent)^3} and skips the lines that are known to stay zero, and the inverse only produces valid
+ * output inside that cube. That is the layout of a zero padded convolution, where it saves almost half the work.
+ */
+class Fft3d {
+    private final int size;
+    private final int log2;
+    private final double[] cos;
+    private final double[] sin;
+    private final int[] reversed;
+
+    Fft3d(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("FFT size must be a power of two, got " + size);
+        this.size = size;
+        this.log2 = Integer.numberOfTrailingZeros(size);
+        this.cos = new double[size / 2];
+        this.sin = new double[size / 2];
+        for (int k = 0; k < size / 2; k++) {
+            double angle = -2 * Math.PI * k / size;
+            cos[k] = Math.cos(angle);
+            sin[k] = Math.sin(angle);
+        }
+        this.reversed = new int[size];
+        for (int i = 0; i < size; i++)
+            reversed[i] = Integer.reverse(i) >>> (Integer.SIZE - log2);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Unnormalised forward transform of data that is zero outside {@code [0, extent)^3}.
+     */
+    void forward(double[] re, double[] im, int extent) {
+        final int plane = size * size;
+        // z lines: only those starting inside the occupied x and y range hold data
+        IntStream.range(0, extent).parallel().forEach(x -> {
+            double[] lineRe = new double[size], lineIm = new double[size];
+            for (int y = 0; y < extent; y++)
+                transformLine(re, im, x * plane + y * size, 1, lineRe, lineIm, false);
+        });
+        // y lines: the x planes beyond the extent are still zero
+        IntStream.range(0, extent).parallel().forEach(x -> {
+            double[] lineRe = new double[size], lineIm = new double[size];
+            for (int z = 0; z < size; z++)
+                transformLine(re, im, x * plane + z, size, lineRe, lineIm, false);
+        });
+        IntStream.range(0, size).parallel().forEach(y -> {
+            double[] lineRe = new double[size], lineIm = new double[size];
+            for (int z = 0; z < size; z++)
+                transformLine(re, im, y * size + z, plane, lineRe, lineIm, false);
+        });
+    }
+
+    /**
+     * Normalised inverse transform, only valid inside {@code [0, extent)^3} afterwards.
+     */
+    void inverse(double[] re, double[] im, int extent) {
+        final int plane = size * size;
+        IntStream.range(0, size).parallel().forEach(y -> {
+            double[] lineRe = new double[size], lineIm = new double[size];
+            for (int z = 0; z < size; z++)
+                transformLine(re, im, y * size + z, plane, lineRe, lineIm, true);
+        });
+        IntStream.range(0, extent).parallel().forEach(x -> {
+            double[] lineRe = new double[size], lineIm = new double[size];
+            for (int z = 0; z < size; z++)
+                transformLine(re, im, x * plane + z, size, lineRe, lineIm, true);
+        });
+        final double scale = 1.0 / ((double) plane * size);
+        IntStream.range(0, extent).parallel().forEach(x -> {
+            double[] lineRe = new double[size], lineIm = new double[size];
+            for (int y = 0; y < extent; y++) {
+                int base = x * plane + y * size;
+                transformLine(re, im, base, 1, lineRe, lineIm, true);
+                for (int z = 0; z < extent; z++) {
+                    re[base + z] *= scale;
+                    im[base + z] *= scale;
+                }
+            }
+        });
+    }
+
+    private void transformLine(double[] re, double[] im, int base, int stride, double[] lineRe, double[] lineIm, boolean inverse) {
+        for (int k = 0; k < size; k++) {
+            int r = reversed[k];
+            lineRe[r] = re[base + k * stride];
+            lineIm[r] = im[base + k * stride];
+        }
+        final double sign = inverse ? -1 : 1;
+        for (int half = 1, step = size >> 1; half < size; half <<= 1, step >>= 1) {
+            for (int start = 0; start < size; start += half << 1) {
+                for (int k = 0; k < half; k++) {
+                    final double wr = cos[k * step];
+                    final double wi = sign * sin[k * step];
+                    final int a = start + k;
+                    final int b = a + half;
+                    final double tr = wr * lineRe[b] - wi * lineIm[b];
+                    final double ti = wr * lineIm[b] + wi * lineRe[b];
+                    lineRe[b] = lineRe[a] - tr;
+                    lineIm[b] = lineIm[a] - ti;
+                    lineRe[a] += tr;
+                    lineIm[a] += ti;
+                }
+            }
+        }
+        for (int k = 0; k < size; k++) {
+            re[base + k * stride] = lineRe[k];
+            im[base + k * stride] = lineIm[k];
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package engine;
+
+/**
+ * Remembers the last force matrix evaluated for a model together with the {@link ParticleStore} version
+ * it was computed for, so asking again for an unchanged configuration only copies it. Models whose force
+ * does not depend on the speed are keyed on the position version only.
+ */
+public class ForceCache {
+    private final MovementModel model;
+    private final boolean speedDependant;
+    private final double[][] cachedForces;
+    private long cachedVersion;
+    private boolean valid;
+    private long hits;
+    private long misses;
+
+    public ForceCache(MovementModel model) {
+        this.model = model;
+        this.speedDependant = model.isForceFunctionSpeedDependant();
+        this.cachedForces = new double[Particle.DIMENSION][model.particleCount()];
+    }
+
+    public void computeForces(double[][] forces) {
+        ParticleStore state = model.state();
+        long version = speedDependant ? state.version() : state.positionVersion();
+        if (valid && cachedVersion == version) {
+            hits++;
+        } else {
+            misses++;
+            long start = Metrics.ENABLED ? Metrics.start() : 0;
+            model.computeForces(cachedForces);
+            if (Metrics.ENABLED) {
+                Metrics.end(Metrics.Phase.FORCES, start);
+                long n = model.particleCount();
+                Metrics.addPairs(n * (n - 1) / 2);
+            }
+            cachedVersion = version;
+            valid = true;
+        }
+        for (int d = 0; d < Particle.DIMENSION; d++)
+            System.arraycopy(cachedForces[d], 0, forces[d], 0, cachedForces[d].length);
+    }
+
+    public void computeR2(double[][] R2) {
+        computeForces(R2);
+        double inverseMass = 1 / model.mass();
+        for (double[] axis : R2)
+            for (int i = 0; i < axis.length; i++)
+                axis[i] *= inverseMass;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * Number of actual force evaluations.
+     */
+    public long misses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return "force evaluations=%d, cache hits=%d".formatted(misses, hits);
+    }
+}
@@ -0,0 +1,32 @@
+package engine;
+
+/**
+ * Deviation of an approximate force matrix from a reference one.
+ *
+ * @param relativeRms sqrt(sum |F - F_ref|^2 / sum |F_ref|^2) over every particle
+ * @param maxRelative largest per particle |F - F_ref| / |F_ref|
+ */
+public record ForceError(double relativeRms, double maxRelative) {
+
+    public static ForceError between(double[][] reference, double[][] approximation) {
+        double errorSum = 0, referenceSum = 0, max = 0;
+        for (int i = 0; i < reference[0].length; i++) {
+            double diff2 = 0, ref2 = 0;
+            for (int d = 0; d < reference.length; d++) {
+                double diff = approximation[d][i] - reference[d][i];
+                diff2 += diff * diff;
+                ref2 += reference[d][i] * reference[d][i];
+            }
+            errorSum += diff2;
+            referenceSum += ref2;
+            if (ref2 > 0)
+                max = Math.max(max, Math.sqrt(diff2 / ref2));
+        }
+        return new ForceError(referenceSum > 0 ? Math.sqrt(errorSum / referenceSum) : 0, max);
+    }
+
+    @Override
+    public String toString() {
+        return "relative RMS=%.3e max=%.3e".formatted(relativeRms, maxRelative);
+    }
+}
@@ -0,0 +1,96 @@
+package engine;
+
+import java.util.stream.IntStream;
+
+/**
+ * Strategy used by {@link GravitationalSystem} to evaluate the softened gravitational
+ * force acting on every particle.
+ */
+public interface ForceSolver {
+    // Pairs below which splitting the targets across threads costs more than it saves
+    long PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Fills {@code forces[axis][i]} with the total force acting on the particle at position
+     * {@code (x[i], y[i], z[i])}.
+     *
+     * @param GM2 G times the squared particle mass
+     * @param h   Plummer softening length
+     */
+    void computeForces(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces);
+
+    /**
+     * Same as {@link #computeForces} and also returns the softened potential energy, the sum over pairs of
+     * {@code -GM2 / sqrt(r^2 + h^2)}. Solvers override it to accumulate the potential in the force sweep, with the
+     * same approximation as their forces; the default runs a separate exact pass.
+     */
+    default double computeForcesAndPotential(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        computeForces(x, y, z, GM2, h, forces);
+        return pairPotential(x, y, z, GM2, h);
+    }
+
+    /**
+     * Softened potential energy alone, with the same approximation as {@link #computeForcesAndPotential}. Meant for
+     * energy samples whose forces nobody would use; the default evaluates them anyway, solvers with a cheaper
+     * potential only pass override it.
+     */
+    default double computePotential(double[] x, double[] y, double[] z, double GM2, double h) {
+        return computeForcesAndPotential(x, y, z, GM2, h, new double[Particle.DIMENSION][x.length]);
+    }
+
+    /**
+     * Fills {@code forces[axis][targets[k]]} for the first {@code targetCount} targets with the force exerted by
+     * every other particle, leaving the remaining entries untouched. The default sums directly.
+     */
+    default void computeForces(double[] x, double[] y, double[] z, double GM2, double h,
+                               int[] targets, int targetCount, double[][] forces) {
+        final int n = x.length;
+        final double h2 = h * h;
+        IntStream range = IntStream.range(0, targetCount);
+        (targetCount * (long) n > PARALLEL_THRESHOLD ? range.parallel() : range).forEach(k -> {
+            final int i = targets[k];
+            final double xi = x[i], yi = y[i], zi = z[i];
+            double fx = 0, fy = 0, fz = 0;
+            for (int j = 0; j < n; j++) {
+                if (j == i)
+                    continue;
+                final double dx = xi - x[j];
+                final double dy = yi - y[j];
+                final double dz = zi - z[j];
+                final double invDist = 1.0 / Math.sqrt(dx*dx + dy*dy + dz*dz + h2);
+                final double invDist3 = invDist * invDist * invDist;
+                fx += dx * invDist3;
+                fy += dy * invDist3;
+                fz += dz * invDist3;
+            }
+            forces[0][i] = -GM2 * fx;
+            forces[1][i] = -GM2 * fy;
+            forces[2][i] = -GM2 * fz;
+        });
+    }
+
+    static double pairPotential(double[] x, double[] y, double[] z, double GM2, double h) {
+        final int n = x.length;
+        final double h2 = h * h;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            double row = 0;
+            for (int j = i + 1; j < n; j++) {
+                double dx = x[i] - x[j];
+                double dy = y[i] - y[j];
+                double dz = z[i] - z[j];
+                row += 1.0 / Math.sqrt(dx*dx + dy*dy + dz*dz + h2);
+            }
+            sum += row;
+        }
+        return -GM2 * sum;
+    }
+
+    /**
+     * Solvers are not required to be reentrant. Those keeping scratch buffers between calls return a fresh
+     * instance here, so that every model copy owns its solver.
+     */
+    default ForceSolver copy() {
+        return this;
+    }
+}
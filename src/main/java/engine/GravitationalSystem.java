@@ -1,24 +1,42 @@
 package engine;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class GravitationalSystem implements MovementModel {
-    private final List<Particle> particles;
+    private final ParticleStore state;
     private final double mass;
     private final int particleCount;
     private final double G;
     private final double h;
     private final double GM2;
+    private final ForceSolver solver;
+    // Fused mode: the last force evaluation also produced the potential energy of fusedVersion positions
+    private boolean fusedEnergy;
+    private double[][] fusedForces;
+    private double fusedPotential;
+    private long fusedVersion = -1;
+    // Positions of the last energy sample that had not been evaluated, whether forces were evaluated for them
+    // afterwards, and whether that was the case for the sample before
+    private long sampledVersion = -1;
+    private boolean sampledEvaluated;
+    private boolean sampledForcesReused = true;
 
     public GravitationalSystem(List<Particle> particles, double mass, double G, double h) {
-        this.particles = new ArrayList<>(particles);
+        this(particles, mass, G, h, new DirectSumSolver());
+    }
+
+    public GravitationalSystem(List<Particle> particles, double mass, double G, double h, ForceSolver solver) {
+        this(ParticleStore.of(particles), mass, G, h, solver);
+    }
+
+    private GravitationalSystem(ParticleStore state, double mass, double G, double h, ForceSolver solver) {
+        this.state = state;
         this.mass = mass;
-        this.particleCount = particles.size();
+        this.particleCount = state.size();
         this.G = G;
         this.h = h;
         this.GM2 = this.mass * this.mass * this.G;
+        this.solver = solver;
     }
 
     @Override
@@ -27,8 +45,8 @@ public class GravitationalSystem implements MovementModel {
     }
 
     @Override
-    public List<Particle> particles() {
-        return particles;
+    public ParticleStore state() {
+        return state;
     }
 
     @Override
@@ -38,8 +56,26 @@ public class GravitationalSystem implements MovementModel {
 
     @Override
     public MovementModel hardCopyModel() {
-        List<Particle> newParticles = particles.stream().map(Particle::hardCopy).toList();
-        return new GravitationalSystem(newParticles, mass, G, h);
+        GravitationalSystem copy = new GravitationalSystem(state.copy(), mass, G, h, solver.copy());
+        copy.setFusedEnergy(fusedEnergy);
+        return copy;
+    }
+
+    /**
+     * In fused mode every force evaluation also accumulates the potential energy, and asking for the energy of
+     * positions whose forces were not evaluated yet evaluates them, so that the next step reuses them, as Verlet does.
+     * Sampling the energy then costs an O(N) kinetic term on top of the step. Integrators that evaluate elsewhere,
+     * such as Gear at its predicted positions, would throw those forces away: once a sample's forces went unused,
+     * the following samples take the solver's potential only pass instead. The potential carries the same
+     * approximation as the solver's forces either way.
+     */
+    public void setFusedEnergy(boolean fusedEnergy) {
+        this.fusedEnergy = fusedEnergy;
+        if (fusedEnergy && fusedForces == null)
+            fusedForces = new double[Particle.DIMENSION][particleCount];
+        fusedVersion = -1;
+        sampledVersion = -1;
+        sampledForcesReused = true;
     }
 
     public double systemEnergy(){
@@ -48,20 +84,28 @@ public class GravitationalSystem implements MovementModel {
 
     private double kineticEnergy(){
         double totalEnergy=0;
-        for(Particle p : particles){
-            totalEnergy += p.getSpeedAbs() * (mass / 2);
+        for (int d = 0; d < Particle.DIMENSION; d++) {
+            double[] speed = state.speed(d);
+            for (int i = 0; i < particleCount; i++)
+                totalEnergy += speed[i] * speed[i];
         }
-        return totalEnergy;
+        return totalEnergy * (mass / 2);
     }
 
     private double potentialEnergy(){
+        if (fusedEnergy) {
+            if (!fuseEnergySample())
+                return solver.computePotential(state.x(), state.y(), state.z(), GM2, h);
+            evaluateFused();
+            return fusedPotential;
+        }
+        double[] x = state.x(), y = state.y(), z = state.z();
         double energy = 0;
-        for(Particle p : particles){
-            for(int i = particles.indexOf(p) + 1; i < particleCount; i++){
-                Particle p2 = particles.get(i);
-                double dx = p.getX() - p2.getX();
-                double dy = p.getY() - p2.getY();
-                double dz = p.getZ() - p2.getZ();
+        for (int i = 0; i < particleCount; i++) {
+            for (int j = i + 1; j < particleCount; j++) {
+                double dx = x[i] - x[j];
+                double dy = y[i] - y[j];
+                double dz = z[i] - z[j];
                 double r2 = dx*dx + dy*dy + dz*dz;
                 energy += (-GM2) / Math.sqrt(r2 + h*h);
             }
@@ -71,86 +115,77 @@ public class GravitationalSystem implements MovementModel {
 
     public double halfMassRadius(){
         //All particles have the same mass so the center of mass is the average of every particle's coordinates
-        double cx = 0, cy = 0, cz = 0;
-        for(Particle p : particles){
-            cx += p.getX();
-            cy += p.getY();
-            cz += p.getZ();
-        }
-        cx /= particleCount;
-        cy /= particleCount;
-        cz /= particleCount;
-
-        double[] squareDistances = new double[particleCount];
-        for(Particle p : particles){
-            double dx = p.getX() - cx;
-            double dy = p.getY() - cy;
-            double dz = p.getZ() - cz;
-            squareDistances[p.getId()] = dx * dx + dy * dy + dz * dz;
+        double[] center = new double[Particle.DIMENSION];
+        for (int d = 0; d < Particle.DIMENSION; d++) {
+            CompensatedSum sum = new CompensatedSum();
+            for (double coordinate : state.position(d))
+                sum.add(coordinate);
+            center[d] = sum.value() / particleCount;
         }
-        Arrays.sort(squareDistances);
-        return Math.sqrt(squareDistances[particleCount/2 - 1]);
+        return Diagnostics.halfMassRadius(state, center);
     }
 
-    private double[] forceCalculation(Particle p1, Particle p2) {
-        final double dx = p1.getX() - p2.getX();
-        final double dy = p1.getY() - p2.getY();
-        final double dz = p1.getZ() - p2.getZ();
-
-        final double r2 = dx*dx + dy*dy + dz*dz;
-        final double denom = r2 + h*h;
-        final double invDist = 1.0 / Math.sqrt(denom);
-        final double invDist3 = invDist * invDist * invDist;
-        final double scalar = -GM2 * invDist3;
-
-        return new double[] { dx * scalar, dy * scalar, dz * scalar };
+    /**
+     * Every global observable of the current state in a single pass, cheaper than asking for them one by one.
+     */
+    public Diagnostics diagnostics() {
+        return Diagnostics.of(state, mass, potentialEnergy());
     }
 
-    private double[] forceArray(Particle p) {
-        double[] forces = new double[] {0,0,0};
-        for(Particle p2 : particles) {
-            if (!p.equals(p2)) {
-                double[] forces2 = forceCalculation(p, p2);
-                for (int i = 0; i < forces2.length && i < forces.length; i++) {
-                    forces[i] += forces2[i];
-                }
-            }
+    @Override
+    public void computeForces(double[][] forces) {
+        if (!fusedEnergy) {
+            solver.computeForces(state.x(), state.y(), state.z(), GM2, h, forces);
+            return;
         }
-        return forces;
+        if (state.positionVersion() == sampledVersion)
+            sampledEvaluated = true;
+        evaluateFused();
+        for (int d = 0; d < Particle.DIMENSION; d++)
+            System.arraycopy(fusedForces[d], 0, forces[d], 0, particleCount);
     }
 
     @Override
-    public double[][] getForceMatrix(){
-        double[][] forceMatrix = new double[particles.size()][3];
-        particles.parallelStream().forEach(p -> forceMatrix[p.getId()] = forceArray(p));
-        return forceMatrix;
+    public void computeForces(int[] targets, int targetCount, double[][] forces) {
+        solver.computeForces(state.x(), state.y(), state.z(), GM2, h, targets, targetCount, forces);
     }
 
-    @Override
-    public boolean isForceFunctionSpeedDependant() {
-        return false;
+    /**
+     * Whether the energy of the current positions should come from a fused evaluation: always when their forces are
+     * already evaluated, otherwise if the forces of the previous sample were used by the integrator.
+     */
+    private boolean fuseEnergySample() {
+        long version = state.positionVersion();
+        if (version == fusedVersion)
+            return true;
+        if (version != sampledVersion) {
+            if (sampledVersion >= 0)
+                sampledForcesReused = sampledEvaluated;
+            sampledVersion = version;
+            sampledEvaluated = false;
+        }
+        return sampledForcesReused;
     }
 
-    @Override
-    public double[][] getR3Matrix() {
-        return getEmptyMatrix();
+    private void evaluateFused() {
+        long version = state.positionVersion();
+        if (version == fusedVersion)
+            return;
+        fusedPotential = solver.computeForcesAndPotential(state.x(), state.y(), state.z(), GM2, h, fusedForces);
+        fusedVersion = version;
     }
 
-    @Override
-    public double[][] getR4Matrix() {
-        return getEmptyMatrix();    }
+    /**
+     * Compares the forces of the configured solver with the exact direct sum for the current positions.
+     */
+    public ForceError forceError() {
+        double[][] reference = new double[Particle.DIMENSION][particleCount];
+        new DirectSumSolver().computeForces(state.x(), state.y(), state.z(), GM2, h, reference);
+        return ForceError.between(reference, getForceMatrix());
+    }
 
     @Override
-    public double[][] getR5Matrix() {
-        return getEmptyMatrix();    }
-
-    private double[][] getEmptyMatrix() {
-        double[][] toReturn = new double[particleCount()][Particle.DIMENSION];
-        for (int i = 0; i < particleCount(); i++) {
-            for (int j = 0; j < Particle.DIMENSION; j++) {
-                toReturn[i][j] = 0;
-            }
-        }
-        return toReturn;
+    public boolean isForceFunctionSpeedDependant() {
+        return false;
     }
 }
@@ -0,0 +1,49 @@
+package engine;
+
+import java.util.Iterator;
+
+/**
+ * Integration schemes offered by {@link EstimationMethod}, for code that selects them as data.
+ */
+public enum Integrator {
+    VERLET("Verlet", 1),
+    // The corrector's evaluation is reused by the next predictor when forces only depend on positions
+    BEEMAN("Beeman", 1),
+    GEAR("Gear", 1),
+    LEAPFROG("Leapfrog", 1),
+    // One per substage of the composition
+    YOSHIDA("Yoshida", 3),
+    // At most one: the smallest blocks only evaluate their active particles
+    BLOCK("Block", 1);
+
+    private final String displayName;
+    private final int forceEvaluationsPerStep;
+
+    Integrator(String displayName, int forceEvaluationsPerStep) {
+        this.displayName = displayName;
+        this.forceEvaluationsPerStep = forceEvaluationsPerStep;
+    }
+
+    public String displayName() {
+        return displayName;
+    }
+
+    /**
+     * Full force evaluations per step for a model whose force only depends on positions, as counted by
+     * {@link ForceCache}.
+     */
+    public int forceEvaluationsPerStep() {
+        return forceEvaluationsPerStep;
+    }
+
+    public Iterator<Time> estimation(EstimationMethod method) {
+        return switch (this) {
+            case VERLET -> method.verletEstimation();
+            case BEEMAN -> method.beemanEstimation();
+            case GEAR -> method.gearEstimation();
+            case LEAPFROG -> method.leapfrogEstimation();
+            case YOSHIDA -> method.yoshidaEstimation();
+            case BLOCK -> method.blockEstimation();
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process wide run metrics: time per phase, steps, pair interactions, bytes written and allocation rate, plus the
+ * progress of the running estimation. Enabled with {@code -Dmetrics=true} or by asking for the HTTP endpoint with
+ * {@code -Dmetrics.port}. Every call site checks {@link #ENABLED} first; being a static final constant, the JIT
+ * removes the instrumentation entirely when it is off.
+ * <p>
+ * Concurrent estimations add up to the same counters, the progress reflects the last one that stepped.
+ */
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("metrics") || System.getProperty("metrics.port") != null;
+
+    public enum Phase {
+        /**
+         * A whole integrator step, including its force evaluations.
+         */
+        STEP,
+        FORCES,
+        OBSERVERS,
+        OUTPUT
+    }
+
+    private static final LongAdder[] PHASE_NANOS = new LongAdder[Phase.values().length];
+    private static final LongAdder STEPS = new LongAdder();
+    private static final LongAdder PAIRS = new LongAdder();
+    private static final LongAdder BYTES = new LongAdder();
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static {
+        for (int p = 0; p < PHASE_NANOS.length; p++)
+            PHASE_NANOS[p] = new LongAdder();
+    }
+
+    private static volatile long startNanos = System.nanoTime();
+    private static volatile long startAllocatedBytes = allocatedBytes();
+    private static volatile long runStartNanos;
+    private static volatile double runStartTime;
+    private static volatile double time;
+    private static volatile double endTime = Double.NaN;
+    private static volatile double energyDrift = Double.NaN;
+
+    private Metrics() {
+    }
+
+    /**
+     * Start mark for {@link #end}, only to be called while enabled.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public static void end(Phase phase, long start) {
+        long duration = System.nanoTime() - start;
+        PHASE_NANOS[phase.ordinal()].add(duration);
+        StepPhaseEvent event = new StepPhaseEvent();
+        if (event.shouldCommit()) {
+            event.phase = phase.name();
+            event.step = STEPS.sum();
+            event.phaseDuration = duration;
+            event.commit();
+        }
+    }
+
+    static void runStarted(double currentTime, double runEndTime) {
+        runStartNanos = System.nanoTime();
+        runStartTime = currentTime;
+        time = currentTime;
+        endTime = runEndTime;
+    }
+
+    static void stepped(double currentTime) {
+        STEPS.increment();
+        time = currentTime;
+    }
+
+    public static void addPairs(long pairs) {
+        PAIRS.add(pairs);
+    }
+
+    public static void addBytes(long bytes) {
+        BYTES.add(bytes);
+    }
+
+    /**
+     * Latest relative energy error observed by the caller, shown next to the progress.
+     */
+    public static void reportEnergyDrift(double drift) {
+        energyDrift = drift;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.isThreadAllocatedMemorySupported() ? THREADS.getTotalThreadAllocatedBytes() : -1;
+    }
+
+    public static String report() {
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        long steps = STEPS.sum();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "elapsed: %.1f s%n", elapsed));
+        double runElapsed = (System.nanoTime() - runStartNanos) / 1e9;
+        double progress = (time - runStartTime) / (endTime - runStartTime);
+        if (!Double.isNaN(progress) && progress > 0) {
+            report.append(String.format(Locale.US, "progress: t=%.4f of %.4f (%.1f%%), eta %.1f s%n",
+                    time, endTime, 100 * progress, Math.max(0, runElapsed * (1 - progress) / progress)));
+        }
+        report.append(String.format(Locale.US, "energy drift: %.3e%n", energyDrift));
+        report.append(String.format(Locale.US, "steps: %d (%.1f/s)%n", steps, steps / elapsed));
+        report.append(String.format(Locale.US, "pair interactions: %d (%.3e/s)%n", PAIRS.sum(), PAIRS.sum() / elapsed));
+        report.append(String.format(Locale.US, "bytes written: %d (%.2f MB/s)%n", BYTES.sum(), BYTES.sum() / elapsed / 1e6));
+        long allocated = allocatedBytes();
+        if (allocated >= 0)
+            report.append(String.format(Locale.US, "allocation rate: %.2f MB/s%n", (allocated - startAllocatedBytes) / elapsed / 1e6));
+        long stepNanos = PHASE_NANOS[Phase.STEP.ordinal()].sum();
+        long forceNanos = PHASE_NANOS[Phase.FORCES.ordinal()].sum();
+        report.append(String.format(Locale.US, "phase forces: %.1f ms%n", forceNanos / 1e6));
+        report.append(String.format(Locale.US, "phase update: %.1f ms%n", Math.max(0, stepNanos - forceNanos) / 1e6));
+        report.append(String.format(Locale.US, "phase observers: %.1f ms%n", PHASE_NANOS[Phase.OBSERVERS.ordinal()].sum() / 1e6));
+        report.append(String.format(Locale.US, "phase output: %.1f ms%n", PHASE_NANOS[Phase.OUTPUT.ordinal()].sum() / 1e6));
+        return report.toString();
+    }
+}
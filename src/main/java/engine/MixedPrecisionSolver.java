@@ -0,0 +1,113 @@
+package engine;
+
+/**
+ * Direct summation with the same {@link PairTiles} schedule as {@link DirectSumSolver}, but the pair kernel runs in
+ * single precision on float copies of the positions, halving the bytes streamed per pair. Coordinates are taken relative to their
+ * mean before narrowing, so the float copies only have to resolve distances within the system and not its offset
+ * from the origin. Each tile accumulates in float (at most {@code tileSize} terms per sum), and tiles are summed
+ * into double partial buffers, so the rounding error grows with the tile size and not with N. The integrator
+ * state stays in double; only the returned forces and potential carry the float rounding.
+ */
+public class MixedPrecisionSolver implements ForceSolver {
+    private static final int DEFAULT_TILE_SIZE = 256;
+
+    private final PairTiles tiles;
+    private float[] xf = new float[0];
+    private float[] yf = new float[0];
+    private float[] zf = new float[0];
+    // tileForces[worker][axis][offset within the j tile]
+    private final float[][][] tileForces;
+
+    public MixedPrecisionSolver() {
+        this(DEFAULT_TILE_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MixedPrecisionSolver(int tileSize, int workers) {
+        this.tiles = new PairTiles(tileSize, workers);
+        this.tileForces = new float[workers][Particle.DIMENSION][tileSize];
+    }
+
+    @Override
+    public ForceSolver copy() {
+        return new MixedPrecisionSolver(tiles.tileSize(), tiles.workers());
+    }
+
+    @Override
+    public void computeForces(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        computeForcesAndPotential(x, y, z, GM2, h, forces);
+    }
+
+    @Override
+    public double computeForcesAndPotential(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        final int n = x.length;
+        if (xf.length != n) {
+            xf = new float[n];
+            yf = new float[n];
+            zf = new float[n];
+        }
+        narrow(x, xf);
+        narrow(y, yf);
+        narrow(z, zf);
+        final float h2 = (float) (h * h);
+        final float gm2 = (float) GM2;
+        final double inverseDistances = tiles.run(n,
+                (worker, iStart, iEnd, jStart, jEnd, fx, fy, fz) -> tile(worker, gm2, h2, iStart, iEnd, jStart, jEnd, fx, fy, fz),
+                forces);
+        return -GM2 * inverseDistances;
+    }
+
+    private static void narrow(double[] source, float[] target) {
+        double mean = 0;
+        for (double v : source)
+            mean += v;
+        mean /= Math.max(1, source.length);
+        for (int i = 0; i < source.length; i++)
+            target[i] = (float) (source[i] - mean);
+    }
+
+    private double tile(int worker, float gm2, float h2, int iStart, int iEnd, int jStart, int jEnd,
+                        double[] fx, double[] fy, double[] fz) {
+        final float[] x = xf, y = yf, z = zf;
+        final float[] tx = tileForces[worker][0];
+        final float[] ty = tileForces[worker][1];
+        final float[] tz = tileForces[worker][2];
+        final boolean diagonal = iStart == jStart;
+        double inverseDistances = 0;
+        for (int i = iStart; i < iEnd; i++) {
+            final float xi = x[i], yi = y[i], zi = z[i];
+            float fxi = 0, fyi = 0, fzi = 0, potential = 0;
+            for (int j = diagonal ? i + 1 : jStart; j < jEnd; j++) {
+                final float dx = xi - x[j];
+                final float dy = yi - y[j];
+                final float dz = zi - z[j];
+                final float invDist = 1f / (float) Math.sqrt(dx*dx + dy*dy + dz*dz + h2);
+                final float scalar = -gm2 * invDist * invDist * invDist;
+                potential += invDist;
+                final float px = dx * scalar;
+                final float py = dy * scalar;
+                final float pz = dz * scalar;
+                fxi += px;
+                fyi += py;
+                fzi += pz;
+                tx[j - jStart] -= px;
+                ty[j - jStart] -= py;
+                tz[j - jStart] -= pz;
+            }
+            fx[i] += fxi;
+            fy[i] += fyi;
+            fz[i] += fzi;
+            inverseDistances += potential;
+        }
+        // Flush the reactions of the j tile into the double buffers before the next tile pair
+        for (int j = jStart; j < jEnd; j++) {
+            final int o = j - jStart;
+            fx[j] += tx[o];
+            fy[j] += ty[o];
+            fz[j] += tz[o];
+            tx[o] = 0;
+            ty[o] = 0;
+            tz[o] = 0;
+        }
+        return inverseDistances;
+    }
+}
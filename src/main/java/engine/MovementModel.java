@@ -1,33 +1,101 @@
 package engine;
 
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Every matrix returned by a model is indexed as {@code [axis][index]}, where index is the dense
+ * particle index of {@link #state()}.
+ */
 public interface MovementModel {
 
     double mass();
 
-    List<Particle> particles();
+    ParticleStore state();
+
+    default List<Particle> particles() {
+        return state().asList();
+    }
 
     MovementModel hardCopyModel();
 
     boolean isForceFunctionSpeedDependant();
 
-    int particleCount();
+    default int particleCount() {
+        return state().size();
+    }
+
+    /**
+     * Overwrites {@code forces} with the force acting on every particle for the current state.
+     */
+    void computeForces(double[][] forces);
+
+    /**
+     * Writes the force acting on each of the first {@code targetCount} particles of {@code targets} into their
+     * entries of {@code forces}; the entries of the other particles are left unspecified. Models able to evaluate
+     * a subset alone override it, the default evaluates every particle.
+     */
+    default void computeForces(int[] targets, int targetCount, double[][] forces) {
+        computeForces(forces);
+    }
+
+    default double[][] getForceMatrix() {
+        double[][] forces = new double[Particle.DIMENSION][particleCount()];
+        computeForces(forces);
+        return forces;
+    }
+
+    default void computeR2(double[][] R2) {
+        computeForces(R2);
+        double inverseMass = 1 / mass();
+        for (int d = 0; d < Particle.DIMENSION; d++)
+            for (int i = 0; i < particleCount(); i++)
+                R2[d][i] *= inverseMass;
+    }
 
-    double[][] getForceMatrix();
+    /**
+     * Highest order of position derivative the model can make non zero. Orders above it are zero filled by
+     * {@link #computeDerivatives} and integrators may skip them altogether. The default only knows the acceleration;
+     * models able to make higher orders non zero override both this and {@link #computeDerivatives}.
+     */
+    default int highestNonZeroDerivative() {
+        return 2;
+    }
+
+    /**
+     * Fills {@code derivatives[q]}, indexed as {@code [axis][index]}, with the q-th time derivative of every position
+     * for {@code 2 <= q <= highestOrder}, from a single evaluation of the force. Lower entries are not touched and may
+     * be null. The default computes the acceleration and zero fills the orders above
+     * {@link #highestNonZeroDerivative()}.
+     */
+    default void computeDerivatives(int highestOrder, double[][][] derivatives) {
+        computeR2(derivatives[2]);
+        for (int q = Math.max(3, highestNonZeroDerivative() + 1); q <= highestOrder; q++)
+            for (double[] axis : derivatives[q])
+                Arrays.fill(axis, 0);
+    }
 
     default double[][] getR2Matrix() {
-        double[][] F = getForceMatrix();
-        double[][] R2 = new double[particleCount()][Particle.DIMENSION];
-        for (int i = 0; i < particleCount(); i++)
-            for (int j = 0; j < Particle.DIMENSION; j++)
-                R2[i][j] = F[i][j] / mass();
-        return R2;
+        return derivativeMatrix(2);
     }
 
-    double[][] getR3Matrix();
+    default double[][] getR3Matrix() {
+        return derivativeMatrix(3);
+    }
 
-    double[][] getR4Matrix();
+    default double[][] getR4Matrix() {
+        return derivativeMatrix(4);
+    }
+
+    default double[][] getR5Matrix() {
+        return derivativeMatrix(5);
+    }
 
-    double[][] getR5Matrix();
+    private double[][] derivativeMatrix(int order) {
+        double[][][] derivatives = new double[order + 1][][];
+        for (int q = 2; q <= order; q++)
+            derivatives[q] = new double[Particle.DIMENSION][particleCount()];
+        computeDerivatives(order, derivatives);
+        return derivatives[order];
+    }
 }
@@ -0,0 +1,291 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Many independent one dimensional {@link DampedOscillator}s, each with its own parameters and time step, advanced
+ * together by one integrator. The state lives in primitive arrays indexed by member, and every kernel is a plain
+ * loop over them, so there is no per step allocation, boxing or copy of the model. Each member performs exactly
+ * the arithmetic of {@link EstimationMethod} on a single {@link DampedOscillator}, so its trajectory is the same
+ * one a separate run would produce, and its error against the analytic solution is accumulated as it goes.
+ * <p>
+ * Members are ordered by step count, longest first, and split into blocks that run concurrently. Within a block the
+ * members that are still running always form a prefix, so the kernels loop over a shrinking range.
+ */
+public class OscillatorEnsemble {
+    private static final int BLOCK_SIZE = 1024;
+    // Gear 5 corrector for a force depending on the speed, as in EstimationMethod
+    private static final double[] GEAR_CORRECTOR = {3.0 / 16.0, 251.0 / 360.0, 1, 11.0 / 18.0, 1.0 / 6.0, 1.0 / 60.0};
+    private static final int GEAR_COEFFICIENTS = GEAR_CORRECTOR.length;
+    // BINOMIALS[j][q] is the predictor coefficient of derivative j in the prediction of derivative q
+    private static final double[][] BINOMIALS = new double[GEAR_COEFFICIENTS][GEAR_COEFFICIENTS];
+
+    static {
+        for (int j = 0; j < GEAR_COEFFICIENTS; j++) {
+            BINOMIALS[j][0] = 1;
+            for (int q = 1; q <= j; q++)
+                BINOMIALS[j][q] = BINOMIALS[j - 1][q - 1] + (q < j ? BINOMIALS[j - 1][q] : 0);
+        }
+    }
+
+    /**
+     * Parameters of one oscillator, which starts at {@code x = amplitude} with the speed of the analytic solution.
+     */
+    public record Member(double K, double gamma, double mass, double amplitude, double deltaT) {
+        public Member {
+            if (mass <= 0 || deltaT <= 0)
+                throw new IllegalArgumentException("Mass and time step must be positive");
+        }
+
+        public double analyticPosition(double time) {
+            double omega = Math.sqrt(K / mass - gamma * gamma / (4 * mass * mass));
+            return amplitude * Math.exp(-gamma * time / (2 * mass)) * Math.cos(omega * time);
+        }
+    }
+
+    private final Integrator integrator;
+    private final double endTime;
+    private final List<Member> members;
+    // Member index of every sorted slot and its inverse
+    private final int[] order;
+    private final int[] slotOf;
+    private final double[] K, gamma, mass, amplitude, deltaT, deltaTPow2, omega;
+    private final int[] stepCount;
+    private final double[] position, speed, time;
+    private final double[] squaredErrorSum, maxError;
+    private boolean finished;
+
+    public OscillatorEnsemble(Integrator integrator, List<Member> members, double endTime) {
+        if (integrator != Integrator.VERLET && integrator != Integrator.BEEMAN && integrator != Integrator.GEAR)
+            throw new IllegalArgumentException("Ensembles only support Verlet, Beeman and Gear, got " + integrator.displayName());
+        this.integrator = integrator;
+        this.endTime = endTime;
+        this.members = List.copyOf(members);
+        final int n = members.size();
+        int[] steps = new int[n];
+        for (int m = 0; m < n; m++)
+            steps[m] = stepsUntil(members.get(m).deltaT(), endTime);
+        this.order = IntStream.range(0, n).boxed()
+                .sorted(Comparator.comparingInt((Integer m) -> steps[m]).reversed())
+                .mapToInt(Integer::intValue).toArray();
+        this.slotOf = new int[n];
+        for (int slot = 0; slot < n; slot++)
+            slotOf[order[slot]] = slot;
+        K = new double[n];
+        gamma = new double[n];
+        mass = new double[n];
+        amplitude = new double[n];
+        deltaT = new double[n];
+        deltaTPow2 = new double[n];
+        omega = new double[n];
+        stepCount = new int[n];
+        position = new double[n];
+        speed = new double[n];
+        time = new double[n];
+        squaredErrorSum = new double[n];
+        maxError = new double[n];
+        for (int s = 0; s < n; s++) {
+            Member member = members.get(order[s]);
+            K[s] = member.K();
+            gamma[s] = member.gamma();
+            mass[s] = member.mass();
+            amplitude[s] = member.amplitude();
+            deltaT[s] = member.deltaT();
+            deltaTPow2[s] = deltaT[s] * deltaT[s];
+            omega[s] = Math.sqrt(K[s] / mass[s] - gamma[s] * gamma[s] / (4 * mass[s] * mass[s]));
+            stepCount[s] = steps[order[s]];
+            position[s] = amplitude[s];
+            speed[s] = -amplitude[s] * gamma[s] / (2 * mass[s]);
+        }
+    }
+
+    /**
+     * Steps taken by an {@link EstimationMethod} iterator, which keeps stepping while its accumulated time has not
+     * passed the end time.
+     */
+    private static int stepsUntil(double deltaT, double endTime) {
+        int steps = 0;
+        for (double t = 0; t <= endTime; t += deltaT)
+            steps++;
+        return steps;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    public Member member(int index) {
+        return members.get(index);
+    }
+
+    public Integrator integrator() {
+        return integrator;
+    }
+
+    /**
+     * Advances every member to the end time in a single pass. Can only be called once.
+     */
+    public void run() {
+        if (finished)
+            throw new IllegalStateException("The ensemble has already been run");
+        final int n = members.size();
+        IntStream.range(0, (n + BLOCK_SIZE - 1) / BLOCK_SIZE).parallel().forEach(b -> {
+            int from = b * BLOCK_SIZE;
+            int to = Math.min(from + BLOCK_SIZE, n);
+            switch (integrator) {
+                case VERLET -> runVerlet(from, to);
+                case BEEMAN -> runBeeman(from, to);
+                default -> runGear(from, to);
+            }
+        });
+        finished = true;
+    }
+
+    private double force(int s, double x, double v) {
+        return -K[s] * x - gamma[s] * v;
+    }
+
+    /**
+     * Index one past the last member of {@code [from, to)} that still takes part in {@code step}, as the members
+     * are sorted by decreasing step count.
+     */
+    private int activeEnd(int from, int to, int step) {
+        while (to > from && stepCount[to - 1] <= step)
+            to--;
+        return to;
+    }
+
+    private void record(int s) {
+        final double t = time[s];
+        final double analytic = amplitude[s] * Math.exp(-gamma[s] * t / (2 * mass[s])) * Math.cos(omega[s] * t);
+        final double error = position[s] - analytic;
+        squaredErrorSum[s] += error * error;
+        maxError[s] = Math.max(maxError[s], Math.abs(error));
+    }
+
+    private void runVerlet(int from, int to) {
+        final double[] prev = new double[to - from];
+        for (int s = from; s < to; s++)
+            prev[s - from] = position[s] - deltaT[s] * speed[s] + deltaTPow2[s] * force(s, position[s], speed[s]) / (2 * mass[s]);
+        for (int step = 0, end = to; (end = activeEnd(from, end, step)) > from; step++) {
+            for (int s = from; s < end; s++) {
+                final double force = force(s, position[s], speed[s]);
+                final double currentPos = position[s];
+                final double nextPos = 2 * currentPos - prev[s - from] + deltaTPow2[s] * force / mass[s];
+                speed[s] = (nextPos - prev[s - from]) / (2 * deltaT[s]);
+                position[s] = nextPos;
+                prev[s - from] = currentPos;
+                time[s] += deltaT[s];
+                record(s);
+            }
+        }
+    }
+
+    private void runBeeman(int from, int to) {
+        final double[] prevForce = new double[to - from];
+        for (int s = from; s < to; s++)
+            prevForce[s - from] = force(s, position[s], speed[s]);
+        for (int step = 0, end = to; (end = activeEnd(from, end, step)) > from; step++) {
+            for (int s = from; s < end; s++) {
+                final double dt = deltaT[s], dt2 = deltaTPow2[s], m = mass[s];
+                final double force = force(s, position[s], speed[s]);
+                final double pf = prevForce[s - from];
+                final double nextPos = position[s] + speed[s] * dt + 2 * dt2 * (force / (3 * m)) - dt2 * pf / (6 * m);
+                final double nextSpeedPred = speed[s] + 3 * dt * force / (2 * m) - dt * pf / (2 * m);
+                final double prevSpeed = speed[s];
+                position[s] = nextPos;
+                final double nextForce = force(s, nextPos, nextSpeedPred);
+                speed[s] = prevSpeed + dt * nextForce / (3 * m) + 5 * dt * force / (6 * m) - dt * pf / (6 * m);
+                prevForce[s - from] = force;
+                time[s] += dt;
+                record(s);
+            }
+        }
+    }
+
+    private void runGear(int from, int to) {
+        final int size = to - from;
+        // gears[q][member] is the q-th derivative scaled by deltaT^q / q!, as in EstimationMethod
+        final double[][] gears = new double[GEAR_COEFFICIENTS][size];
+        final double[] prediction = new double[GEAR_COEFFICIENTS];
+        for (int s = from; s < to; s++) {
+            final double m = mass[s];
+            final double[] derivatives = new double[GEAR_COEFFICIENTS];
+            derivatives[0] = position[s];
+            derivatives[1] = speed[s];
+            derivatives[2] = force(s, position[s], speed[s]) * (1 / m);
+            for (int q = 3; q < GEAR_COEFFICIENTS; q++)
+                derivatives[q] = force(s, derivatives[q - 2], derivatives[q - 1]) / m;
+            double scale = 1;
+            for (int q = 0; q < GEAR_COEFFICIENTS; q++) {
+                if (q > 0)
+                    scale *= deltaT[s] / q;
+                gears[q][s - from] = derivatives[q] * scale;
+            }
+        }
+        for (int step = 0, end = to; (end = activeEnd(from, end, step)) > from; step++) {
+            for (int s = from; s < end; s++) {
+                final int k = s - from;
+                final double dt = deltaT[s];
+                // Pascal triangle predictor, summed in the same order as EstimationMethod
+                for (int q = 0; q < GEAR_COEFFICIENTS; q++) {
+                    double value = gears[q][k];
+                    for (int j = q + 1; j < GEAR_COEFFICIENTS; j++)
+                        value += BINOMIALS[j][q] * gears[j][k];
+                    prediction[q] = value;
+                }
+                final double acceleration = force(s, prediction[0], prediction[1] / dt) * (1 / mass[s]);
+                final double deltaR2 = acceleration * (deltaTPow2[s] / 2) - prediction[2];
+                for (int q = 0; q < GEAR_COEFFICIENTS; q++)
+                    gears[q][k] = prediction[q] + GEAR_CORRECTOR[q] * deltaR2;
+                position[s] = gears[0][k];
+                speed[s] = gears[1][k] / dt;
+                time[s] += dt;
+                record(s);
+            }
+        }
+    }
+
+    private int slot(int index) {
+        if (!finished)
+            throw new IllegalStateException("The ensemble has not been run yet");
+        return slotOf[index];
+    }
+
+    public int steps(int index) {
+        return stepCount[slot(index)];
+    }
+
+    public double position(int index) {
+        return position[slot(index)];
+    }
+
+    public double speed(int index) {
+        return speed[slot(index)];
+    }
+
+    /**
+     * Mean of the squared difference with the analytic solution over every step.
+     */
+    public double meanSquaredError(int index) {
+        int s = slot(index);
+        return squaredErrorSum[s] / stepCount[s];
+    }
+
+    public double maxError(int index) {
+        return maxError[slot(index)];
+    }
+
+    public double endTime() {
+        return endTime;
+    }
+
+    @Override
+    public String toString() {
+        return "%s ensemble of %d oscillators up to t=%s, time steps %s".formatted(integrator.displayName(), size(), endTime,
+                Arrays.toString(Arrays.stream(deltaT).distinct().sorted().toArray()));
+    }
+}
@@ -0,0 +1,119 @@
+package engine;
+
+import java.util.stream.IntStream;
+
+/**
+ * Tiled schedule over every pair i &lt; j shared by the direct summation solvers. The particles are cut into tiles of
+ * {@code tileSize}, and worker w always gets tile pairs w, w + W, w + 2W, ... in the same order, accumulating into its
+ * own partial force buffer. The buffers are then summed in worker order, so the result only depends on N and the
+ * worker count and repeated evaluations of one configuration are bit-identical.
+ */
+final class PairTiles {
+
+    /**
+     * Pair kernel over particles [iStart, iEnd) against [jStart, jEnd), with j &gt; i on a diagonal tile. Adds the
+     * force on both sides of every pair to the worker's buffers and returns the sum of the inverse distances.
+     */
+    @FunctionalInterface
+    interface Kernel {
+        double accumulate(int worker, int iStart, int iEnd, int jStart, int jEnd, double[] fx, double[] fy, double[] fz);
+    }
+
+    private final int tileSize;
+    private final int workers;
+    private int[] tilePairI = new int[0];
+    private int[] tilePairJ = new int[0];
+    private int tiledCount = -1;
+    // partialForces[worker][axis][index]
+    private double[][][] partialForces = new double[0][][];
+    private final double[] partialPotential;
+
+    PairTiles(int tileSize, int workers) {
+        if (tileSize <= 0 || workers <= 0)
+            throw new IllegalArgumentException("Tile size and worker count must be positive");
+        this.tileSize = tileSize;
+        this.workers = workers;
+        this.partialPotential = new double[workers];
+    }
+
+    int tileSize() {
+        return tileSize;
+    }
+
+    int workers() {
+        return workers;
+    }
+
+    /**
+     * Runs the kernel over every tile pair of {@code n} particles, writes the summed forces and returns the summed
+     * inverse distances.
+     */
+    double run(int n, Kernel kernel, double[][] forces) {
+        prepare(n);
+        final int activeWorkers = Math.min(workers, tilePairI.length);
+        if (activeWorkers <= 1) {
+            accumulate(0, 1, n, kernel);
+        } else {
+            IntStream.range(0, activeWorkers).parallel().forEach(w -> accumulate(w, activeWorkers, n, kernel));
+        }
+        merge(activeWorkers, n, forces);
+        double inverseDistances = 0;
+        for (int w = 0; w < activeWorkers; w++) {
+            inverseDistances += partialPotential[w];
+            partialPotential[w] = 0;
+        }
+        return inverseDistances;
+    }
+
+    private void prepare(int n) {
+        if (n == tiledCount)
+            return;
+        int tiles = (n + tileSize - 1) / tileSize;
+        int pairs = tiles * (tiles + 1) / 2;
+        tilePairI = new int[pairs];
+        tilePairJ = new int[pairs];
+        // Diagonal tiles first: they hold half the pairs of an off diagonal one, and striding the list spreads
+        // them evenly over the workers
+        int k = 0;
+        for (int t = 0; t < tiles; t++) {
+            tilePairI[k] = t;
+            tilePairJ[k++] = t;
+        }
+        for (int t = 0; t < tiles; t++) {
+            for (int u = t + 1; u < tiles; u++) {
+                tilePairI[k] = t;
+                tilePairJ[k++] = u;
+            }
+        }
+        partialForces = new double[workers][Particle.DIMENSION][n];
+        tiledCount = n;
+    }
+
+    private void accumulate(int worker, int activeWorkers, int n, Kernel kernel) {
+        final double[] fx = partialForces[worker][0];
+        final double[] fy = partialForces[worker][1];
+        final double[] fz = partialForces[worker][2];
+        double inverseDistances = 0;
+        for (int k = worker; k < tilePairI.length; k += activeWorkers) {
+            final int iStart = tilePairI[k] * tileSize;
+            final int jStart = tilePairJ[k] * tileSize;
+            inverseDistances += kernel.accumulate(worker, iStart, Math.min(iStart + tileSize, n),
+                    jStart, Math.min(jStart + tileSize, n), fx, fy, fz);
+        }
+        partialPotential[worker] = inverseDistances;
+    }
+
+    private void merge(int activeWorkers, int n, double[][] forces) {
+        for (int d = 0; d < Particle.DIMENSION; d++) {
+            double[] out = forces[d];
+            for (int i = 0; i < n; i++) {
+                double total = 0;
+                for (int w = 0; w < activeWorkers; w++) {
+                    total += partialForces[w][d][i];
+                    partialForces[w][d][i] = 0;
+                }
+                out[i] = total;
+            }
+        }
+    }
+}
@@ -1,25 +1,23 @@
 package engine;
 
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Particle {
     public static final int DIMENSION = 3;
-    private static int globalId = 0;
+    private static final AtomicInteger globalId = new AtomicInteger();
     private final int id;
     private double x, y, z;
     private double sx, sy, sz;
     private final double r;
     private String particleType  = "P";
-    private static final int X = 0;
-    private static final int Y = 1;
-    private static final int Z = 2;
 
     public Particle(double x, double y, double z, double speedx, double speedy, double speedz, double radius) {
-        this(globalId++, x, y, z, speedx, speedy, speedz, radius);
+        this(globalId.getAndIncrement(), x, y, z, speedx, speedy, speedz, radius);
     }
 
     public Particle(double x, double y, double z, double speedx, double speedy, double speedz, double radius, String type) {
-        this(globalId++, x, y, z, speedx, speedy, speedz, radius);
+        this(globalId.getAndIncrement(), x, y, z, speedx, speedy, speedz, radius);
         this.particleType = type;
     }
 
@@ -60,22 +58,6 @@ public class Particle {
         return sx*sx + sy*sy + sz*sz;
     }
 
-    public PosSpeedPair[] getPositionAndSpeedPair() { return new PosSpeedPair[] {
-            new PosSpeedPair(x, sx),
-            new PosSpeedPair(y, sy),
-            new PosSpeedPair(z, sz)
-        };
-    }
-
-    public void setPositionAndSpeedPair(PosSpeedPair[] posAndSpeedPair) {
-        x = posAndSpeedPair[0].pos();
-        sx = posAndSpeedPair[0].speed();
-        y = posAndSpeedPair[1].pos();
-        sy = posAndSpeedPair[1].speed();
-        z = posAndSpeedPair[2].pos();
-        sz = posAndSpeedPair[2].speed();
-    }
-
     public double getX() {
         return x;
     }
@@ -106,6 +88,14 @@ public class Particle {
         return id;
     }
 
+    public double getRadius() {
+        return r;
+    }
+
+    public String getType() {
+        return particleType;
+    }
+
     @Override
     public int hashCode() {
         return id;
@@ -116,31 +106,12 @@ public class Particle {
         return obj instanceof Particle p && id == p.id;
     }
 
-    public void updatePosition(double value, int axis) {
-        switch (axis) {
-            case X:
-                x = value;
-                break;
-            case Y:
-                y = value;
-                break;
-            case Z:
-                z = value;
-                break;
-            default:
-                break;
-        }
-    }
-
-    public record PosSpeedPair(double pos, double speed) {
-    }
-
     public Particle hardCopy() {
         return new Particle(id, x, y, z, sx, sy, sz, r, particleType);
     }
 
     public static void resetGlobalId(){
-        globalId = 0;
+        globalId.set(0);
     }
 
 }
@@ -0,0 +1,348 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Particle-mesh approximation of the softened gravitational force, O(N + M^3 log M) per call for a mesh of
+ * {@code M^3} nodes. Particles are assigned to the mesh with cloud-in-cell weights, the potential is the
+ * convolution of that density with the softened Green's function, computed with a zero padded {@code (2M)^3}
+ * FFT so the system is isolated rather than periodic, and the forces are interpolated back with the same weights
+ * from central differences of the potential. The mesh covers the bounding cube of the particles with some slack
+ * and is only refitted, together with the transformed Green's function, once a particle leaves it or the system
+ * has shrunk to a fraction of it.
+ * <p>
+ * The plain mesh cannot resolve anything below a cell. With P3M enabled the Green's function is split as
+ * {@code 1/s = erf(s/a)/s + erfc(s/a)/s}, where {@code s = sqrt(r^2 + h^2)} keeps the Plummer softening in both
+ * parts: the smooth long range term goes through the mesh and the short range term is summed directly over the
+ * neighbours within {@link #CUTOFF} split radii, found through a cell list. Close pairs then get the exact softened
+ * force, at a cost that grows with the number of neighbours, so dense clumps are slower than the plain mesh.
+ * <p>
+ * The potential energy is interpolated from the same mesh with each particle's interaction with its own cloud
+ * removed.
+ */
+public class ParticleMeshSolver implements ForceSolver {
+    public static final int DEFAULT_MESH_SIZE = 64;
+    // Split radius in cells and cutoff in split radii, the usual TreePM choices
+    private static final double SPLIT_CELLS = 1.25;
+    private static final double CUTOFF = 4.5;
+    // The mesh spans the bounding cube times this, so that it is not refitted on every step
+    private static final double SLACK = 1.25;
+    // Nodes kept free on each side for the interpolation and difference stencils
+    private static final int MARGIN = 2;
+    private static final int MAX_NEIGHBOUR_CELLS = 128;
+    // Intervals of the short range kernel table, which is linear in r^2 up to the cutoff
+    private static final int SHORT_TABLE = 4096;
+    private static final double TWO_OVER_SQRT_PI = 2 / Math.sqrt(Math.PI);
+
+    private final int meshSize;
+    private final boolean p3m;
+    private final Fft3d fft;
+    private final double[] densityRe;
+    private final double[] densityIm;
+    private final double[] greenHat;
+    private double spacing = Double.NaN;
+    private double originX, originY, originZ;
+    private double greenSoftening = Double.NaN;
+    // Self interaction of a unit cloud for every node offset in {-1, 0, 1}^3
+    private final double[] selfGreen = new double[27];
+    // Short range force over distance and potential, both indexed by r^2 * shortScale
+    private final double[] shortForce = new double[SHORT_TABLE + 2];
+    private final double[] shortPotential = new double[SHORT_TABLE + 2];
+    private double shortScale;
+    private double[][] subsetForces = new double[Particle.DIMENSION][0];
+
+    public ParticleMeshSolver() {
+        this(DEFAULT_MESH_SIZE, false);
+    }
+
+    public ParticleMeshSolver(int meshSize, boolean p3m) {
+        if (meshSize <= 2 * MARGIN + 1 || Integer.bitCount(meshSize) != 1)
+            throw new IllegalArgumentException("Mesh size must be a power of two above " + (2 * MARGIN + 1) + ", got " + meshSize);
+        this.meshSize = meshSize;
+        this.p3m = p3m;
+        this.fft = new Fft3d(2 * meshSize);
+        int padded = 8 * meshSize * meshSize * meshSize;
+        this.densityRe = new double[padded];
+        this.densityIm = new double[padded];
+        this.greenHat = new double[padded];
+    }
+
+    public int meshSize() {
+        return meshSize;
+    }
+
+    public boolean isP3m() {
+        return p3m;
+    }
+
+    @Override
+    public ForceSolver copy() {
+        return new ParticleMeshSolver(meshSize, p3m);
+    }
+
+    @Override
+    public void computeForces(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        computeForcesAndPotential(x, y, z, GM2, h, forces);
+    }
+
+    /**
+     * The mesh always yields every force at once, so a subset costs a full evaluation.
+     */
+    @Override
+    public void computeForces(double[] x, double[] y, double[] z, double GM2, double h,
+                              int[] targets, int targetCount, double[][] forces) {
+        if (targetCount == 0)
+            return;
+        if (subsetForces[0].length != x.length)
+            subsetForces = new double[Particle.DIMENSION][x.length];
+        computeForcesAndPotential(x, y, z, GM2, h, subsetForces);
+        for (int d = 0; d < Particle.DIMENSION; d++)
+            for (int k = 0; k < targetCount; k++)
+                forces[d][targets[k]] = subsetForces[d][targets[k]];
+    }
+
+    @Override
+    public double computeForcesAndPotential(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        final int n = x.length;
+        if (n == 0)
+            return 0;
+        fitMesh(x, y, z, h);
+        assignDensity(x, y, z);
+        fft.forward(densityRe, densityIm, meshSize);
+        for (int k = 0; k < greenHat.length; k++) {
+            densityRe[k] *= greenHat[k];
+            densityIm[k] *= greenHat[k];
+        }
+        fft.inverse(densityRe, densityIm, meshSize);
+        final double[] potential = new double[n];
+        IntStream.range(0, n).parallel().forEach(i -> potential[i] = interpolate(i, x, y, z, GM2, forces));
+        if (p3m)
+            addShortRange(x, y, z, GM2, forces, potential);
+        double sum = 0;
+        for (int i = 0; i < n; i++)
+            sum += potential[i];
+        // Every interaction is seen from both ends
+        return GM2 * sum / 2;
+    }
+
+    private void fitMesh(double[] x, double[] y, double[] z, double h) {
+        double minX = x[0], maxX = x[0], minY = y[0], maxY = y[0], minZ = z[0], maxZ = z[0];
+        for (int i = 1; i < x.length; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+        final double extent = Math.max(Math.max(maxX - minX, maxY - minY), Math.max(maxZ - minZ, Double.MIN_NORMAL));
+        final int usable = meshSize - 2 * MARGIN - 1;
+        boolean inside = !Double.isNaN(spacing)
+                && minX >= originX + MARGIN * spacing && maxX < originX + (meshSize - MARGIN - 1) * spacing
+                && minY >= originY + MARGIN * spacing && maxY < originY + (meshSize - MARGIN - 1) * spacing
+                && minZ >= originZ + MARGIN * spacing && maxZ < originZ + (meshSize - MARGIN - 1) * spacing;
+        boolean tooCoarse = extent * SLACK < usable * spacing / 2;
+        if (!inside || tooCoarse) {
+            spacing = extent * SLACK / usable;
+            final double halfSpan = (meshSize - 1) * spacing / 2;
+            originX = (minX + maxX) / 2 - halfSpan;
+            originY = (minY + maxY) / 2 - halfSpan;
+            originZ = (minZ + maxZ) / 2 - halfSpan;
+            greenSoftening = Double.NaN;
+        }
+        if (h != greenSoftening)
+            transformGreen(h);
+    }
+
+    private double splitLength() {
+        return 2 * SPLIT_CELLS * spacing;
+    }
+
+    /**
+     * Mesh potential of a unit mass at distance {@code r}, the long range part only when P3M is enabled.
+     */
+    private double green(double r, double h) {
+        double s = Math.sqrt(r * r + h * h);
+        if (p3m) {
+            double a = splitLength();
+            return s == 0 ? -TWO_OVER_SQRT_PI / a : -(1 - erfc(s / a)) / s;
+        }
+        // Without softening the mesh cannot resolve the coincident node anyway
+        return -1 / Math.max(s, spacing / 2);
+    }
+
+    private void transformGreen(double h) {
+        final int side = 2 * meshSize;
+        Arrays.fill(densityIm, 0);
+        IntStream.range(0, side).parallel().forEach(i -> {
+            final double dx = Math.min(i, side - i) * spacing;
+            for (int j = 0; j < side; j++) {
+                final double dy = Math.min(j, side - j) * spacing;
+                final int base = (i * side + j) * side;
+                for (int k = 0; k < side; k++) {
+                    final double dz = Math.min(k, side - k) * spacing;
+                    densityRe[base + k] = green(Math.sqrt(dx*dx + dy*dy + dz*dz), h);
+                }
+            }
+        });
+        fft.forward(densityRe, densityIm, side);
+        // The kernel is real and even, so its transform is real
+        System.arraycopy(densityRe, 0, greenHat, 0, greenHat.length);
+        for (int o = 0; o < selfGreen.length; o++) {
+            double dx = (o / 9 - 1) * spacing, dy = (o / 3 % 3 - 1) * spacing, dz = (o % 3 - 1) * spacing;
+            selfGreen[o] = green(Math.sqrt(dx*dx + dy*dy + dz*dz), h);
+        }
+        if (p3m)
+            tabulateShortRange(h);
+        greenSoftening = h;
+    }
+
+    private void assignDensity(double[] x, double[] y, double[] z) {
+        Arrays.fill(densityRe, 0);
+        Arrays.fill(densityIm, 0);
+        final int side = 2 * meshSize;
+        for (int i = 0; i < x.length; i++) {
+            final double u = (x[i] - originX) / spacing, v = (y[i] - originY) / spacing, w = (z[i] - originZ) / spacing;
+            final int a = (int) u, b = (int) v, c = (int) w;
+            final double fu = u - a, fv = v - b, fw = w - c;
+            final int base = (a * side + b) * side + c;
+            densityRe[base] += (1 - fu) * (1 - fv) * (1 - fw);
+            densityRe[base + 1] += (1 - fu) * (1 - fv) * fw;
+            densityRe[base + side] += (1 - fu) * fv * (1 - fw);
+            densityRe[base + side + 1] += (1 - fu) * fv * fw;
+            densityRe[base + side * side] += fu * (1 - fv) * (1 - fw);
+            densityRe[base + side * side + 1] += fu * (1 - fv) * fw;
+            densityRe[base + side * side + side] += fu * fv * (1 - fw);
+            densityRe[base + side * side + side + 1] += fu * fv * fw;
+        }
+    }
+
+    /**
+     * Writes the mesh force on particle {@code i} and returns its mesh potential without the self interaction.
+     */
+    private double interpolate(int i, double[] x, double[] y, double[] z, double GM2, double[][] forces) {
+        final int side = 2 * meshSize;
+        final int sx = side * side, sy = side;
+        final double[] phi = densityRe;
+        final double u = (x[i] - originX) / spacing, v = (y[i] - originY) / spacing, w = (z[i] - originZ) / spacing;
+        final int a = (int) u, b = (int) v, c = (int) w;
+        final double[] wu = {1 - (u - a), u - a}, wv = {1 - (v - b), v - b}, ww = {1 - (w - c), w - c};
+        double potential = 0, gx = 0, gy = 0, gz = 0;
+        for (int p = 0; p < 2; p++) {
+            for (int q = 0; q < 2; q++) {
+                for (int r = 0; r < 2; r++) {
+                    final double weight = wu[p] * wv[q] * ww[r];
+                    final int node = ((a + p) * side + b + q) * side + c + r;
+                    potential += weight * phi[node];
+                    gx += weight * (phi[node + sx] - phi[node - sx]);
+                    gy += weight * (phi[node + sy] - phi[node - sy]);
+                    gz += weight * (phi[node + 1] - phi[node - 1]);
+                }
+            }
+        }
+        final double scale = -GM2 / (2 * spacing);
+        forces[0][i] = scale * gx;
+        forces[1][i] = scale * gy;
+        forces[2][i] = scale * gz;
+        // The cloud's own contribution separates per axis into the overlap of its weights at each node offset
+        final double[] su = {wu[0] * wu[1], wu[0] * wu[0] + wu[1] * wu[1], wu[0] * wu[1]};
+        final double[] sv = {wv[0] * wv[1], wv[0] * wv[0] + wv[1] * wv[1], wv[0] * wv[1]};
+        final double[] sw = {ww[0] * ww[1], ww[0] * ww[0] + ww[1] * ww[1], ww[0] * ww[1]};
+        double self = 0;
+        for (int o = 0; o < selfGreen.length; o++)
+            self += selfGreen[o] * su[o / 9] * sv[o / 3 % 3] * sw[o % 3];
+        return potential - self;
+    }
+
+    private double cutoff() {
+        return CUTOFF * splitLength() / 2;
+    }
+
+    private void tabulateShortRange(double h) {
+        final double a = splitLength();
+        final double cutoff = cutoff();
+        shortScale = SHORT_TABLE / (cutoff * cutoff);
+        for (int k = 0; k < shortForce.length; k++) {
+            final double s = Math.sqrt(k / shortScale + h * h);
+            final double u = s / a;
+            final double tail = erfc(u);
+            // d/ds of -erfc(s/a)/s, divided by s to scale the separation vector
+            shortForce[k] = (tail / (s * s) + TWO_OVER_SQRT_PI * Math.exp(-u * u) / (a * s)) / s;
+            shortPotential[k] = -tail / s;
+        }
+    }
+
+    private void addShortRange(double[] x, double[] y, double[] z, double GM2, double[][] forces, double[] potential) {
+        final int n = x.length;
+        final double cutoff = cutoff();
+        // Just below the cutoff so that the table index stays inside the last interval
+        final double cutoff2 = Math.nextDown(cutoff * cutoff);
+        final double scale = shortScale;
+        final double[] forceTable = shortForce, potentialTable = shortPotential;
+        final double extent = (meshSize - 1) * spacing;
+        final int cells = Math.max(1, Math.min(MAX_NEIGHBOUR_CELLS, (int) (extent / cutoff)));
+        final double cellSize = extent / cells;
+        final int[] cellOf = new int[n];
+        final int[] cellStart = new int[cells * cells * cells + 1];
+        for (int i = 0; i < n; i++) {
+            int cx = Math.min(cells - 1, (int) ((x[i] - originX) / cellSize));
+            int cy = Math.min(cells - 1, (int) ((y[i] - originY) / cellSize));
+            int cz = Math.min(cells - 1, (int) ((z[i] - originZ) / cellSize));
+            cellOf[i] = (cx * cells + cy) * cells + cz;
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells * cells * cells; c++)
+            cellStart[c + 1] += cellStart[c];
+        final int[] order = new int[n];
+        final int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+        for (int i = 0; i < n; i++)
+            order[fill[cellOf[i]]++] = i;
+        IntStream.range(0, n).parallel().forEach(i -> {
+            final int c = cellOf[i];
+            final int cx = c / (cells * cells), cy = c / cells % cells, cz = c % cells;
+            final double xi = x[i], yi = y[i], zi = z[i];
+            double fx = 0, fy = 0, fz = 0, phi = 0;
+            for (int ox = Math.max(0, cx - 1); ox <= Math.min(cells - 1, cx + 1); ox++) {
+                for (int oy = Math.max(0, cy - 1); oy <= Math.min(cells - 1, cy + 1); oy++) {
+                    for (int oz = Math.max(0, cz - 1); oz <= Math.min(cells - 1, cz + 1); oz++) {
+                        final int cell = (ox * cells + oy) * cells + oz;
+                        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                            final int j = order[k];
+                            final double dx = xi - x[j];
+                            final double dy = yi - y[j];
+                            final double dz = zi - z[j];
+                            final double r2 = dx*dx + dy*dy + dz*dz;
+                            if (j == i || r2 > cutoff2)
+                                continue;
+                            final double t = r2 * scale;
+                            final int index = (int) t;
+                            final double f = t - index;
+                            final double scalar = -GM2 * (forceTable[index] + f * (forceTable[index + 1] - forceTable[index]));
+                            fx += dx * scalar;
+                            fy += dy * scalar;
+                            fz += dz * scalar;
+                            phi += potentialTable[index] + f * (potentialTable[index + 1] - potentialTable[index]);
+                        }
+                    }
+                }
+            }
+            forces[0][i] += fx;
+            forces[1][i] += fy;
+            forces[2][i] += fz;
+            potential[i] += phi;
+        });
+    }
+
+    /**
+     * Complementary error function with a fractional error below 1.2e-7 (Numerical Recipes' Chebyshev fit).
+     */
+    static double erfc(double x) {
+        final double z = Math.abs(x);
+        final double t = 1 / (1 + 0.5 * z);
+        final double result = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? result : 2 - result;
+    }
+}
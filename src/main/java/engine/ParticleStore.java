@@ -0,0 +1,174 @@
+package engine;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Structure of arrays holding the dynamic state of every particle of a model. Particles are
+ * addressed by their dense index in {@code [0, size())}, which is independent of {@link Particle#getId()}.
+ */
+public class ParticleStore {
+    private final int size;
+    private final double[][] positions;
+    private final double[][] speeds;
+    private final int[] ids;
+    private final double[] radii;
+    private final String[] types;
+    private final View view;
+    private long version;
+    private long positionVersion;
+
+    private ParticleStore(int size, double[][] positions, double[][] speeds, int[] ids, double[] radii, String[] types) {
+        this.size = size;
+        this.positions = positions;
+        this.speeds = speeds;
+        this.ids = ids;
+        this.radii = radii;
+        this.types = types;
+        this.view = new View();
+    }
+
+    public static ParticleStore of(List<Particle> particles) {
+        int n = particles.size();
+        double[][] positions = new double[Particle.DIMENSION][n];
+        double[][] speeds = new double[Particle.DIMENSION][n];
+        int[] ids = new int[n];
+        double[] radii = new double[n];
+        String[] types = new String[n];
+        for (int i = 0; i < n; i++) {
+            Particle p = particles.get(i);
+            positions[0][i] = p.getX();
+            positions[1][i] = p.getY();
+            positions[2][i] = p.getZ();
+            speeds[0][i] = p.getSpeedX();
+            speeds[1][i] = p.getSpeedY();
+            speeds[2][i] = p.getSpeedZ();
+            ids[i] = p.getId();
+            radii[i] = p.getRadius();
+            types[i] = p.getType();
+        }
+        return new ParticleStore(n, positions, speeds, ids, radii, types);
+    }
+
+    public ParticleStore copy() {
+        return new ParticleStore(
+                size,
+                Arrays.stream(positions).map(double[]::clone).toArray(double[][]::new),
+                Arrays.stream(speeds).map(double[]::clone).toArray(double[][]::new),
+                ids, radii, types
+        );
+    }
+
+    /**
+     * Overwrites positions and speeds with those of a store holding the same particles, without allocating.
+     */
+    public void copyFrom(ParticleStore source) {
+        if (source.size != size)
+            throw new IllegalArgumentException("Expected %d particles but got %d".formatted(size, source.size));
+        for (int d = 0; d < Particle.DIMENSION; d++) {
+            System.arraycopy(source.positions[d], 0, positions[d], 0, size);
+            System.arraycopy(source.speeds[d], 0, speeds[d], 0, size);
+        }
+        touch();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Counter identifying the current positions and speeds, see {@link #touch()}.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Counter identifying the current positions only.
+     */
+    public long positionVersion() {
+        return positionVersion;
+    }
+
+    /**
+     * Must be called after writing through the backing arrays, so that values derived from the previous
+     * configuration (such as cached forces) are recomputed.
+     */
+    public void touch() {
+        version++;
+        positionVersion++;
+    }
+
+    /**
+     * Same as {@link #touch()} when only speeds were written.
+     */
+    public void touchSpeeds() {
+        version++;
+    }
+
+    /**
+     * Backing array of the given axis, indexed by dense particle index.
+     */
+    public double[] position(int axis) {
+        return positions[axis];
+    }
+
+    public double[] speed(int axis) {
+        return speeds[axis];
+    }
+
+    public double[] x() {
+        return positions[0];
+    }
+
+    public double[] y() {
+        return positions[1];
+    }
+
+    public double[] z() {
+        return positions[2];
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    public String type(int index) {
+        return types[index];
+    }
+
+    public Particle particle(int index) {
+        return new Particle(ids[index],
+                positions[0][index], positions[1][index], positions[2][index],
+                speeds[0][index], speeds[1][index], speeds[2][index],
+                radii[index], types[index]);
+    }
+
+    /**
+     * Read only list backed by this store. Every {@code get} returns a snapshot of the particle at call time.
+     */
+    public View asList() {
+        return view;
+    }
+
+    /**
+     * List view of a store, writers that understand it can read the backing arrays through {@link #store()}.
+     */
+    public class View extends AbstractList<Particle> implements RandomAccess {
+        public ParticleStore store() {
+            return ParticleStore.this;
+        }
+
+        @Override
+        public Particle get(int index) {
+            return particle(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
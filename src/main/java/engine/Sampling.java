@@ -0,0 +1,26 @@
+package engine;
+
+/**
+ * Schedule for a {@link StepObserver} during {@link EstimationMethod#run}. A sampling is due on the first step and
+ * then every {@code stepInterval} steps, or whenever {@code timeInterval} of simulated time has passed since the
+ * last sample.
+ */
+public record Sampling(long stepInterval, double timeInterval, StepObserver observer) {
+
+    public Sampling {
+        if ((stepInterval > 0) == (timeInterval > 0))
+            throw new IllegalArgumentException("Exactly one of the step or time intervals must be positive");
+    }
+
+    public static Sampling everySteps(long stepInterval, StepObserver observer) {
+        return new Sampling(stepInterval, 0, observer);
+    }
+
+    public static Sampling everyTime(double timeInterval, StepObserver observer) {
+        return new Sampling(0, timeInterval, observer);
+    }
+
+    public boolean isTimeBased() {
+        return timeInterval > 0;
+    }
+}
@@ -0,0 +1,274 @@
+package engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Direct summation split across local worker JVMs, so that the force evaluation of a large system is not bound to
+ * the heap, GC and cores of the process running the integrator. Every worker ({@link SharedMemoryWorker}) maps the
+ * same file, owns a contiguous block of target particles and sums the forces on them from every source.
+ * <p>
+ * A call publishes the positions and bumps a generation counter, which is the step barrier: each worker waits for
+ * a new generation, writes the forces of its block and its share of the potential, then reports the generation it
+ * finished. The call returns once every worker has reported. The counters are read and written with
+ * acquire/release semantics through a {@link VarHandle} on the mapped buffer, which orders the plain position and
+ * force accesses around them across processes.
+ * <p>
+ * The workers are started on the first call and restarted if the particle count changes. They exit when the solver
+ * is closed, on JVM shutdown, or once the coordinator process is gone. Copies of the solver share the same workers,
+ * so calls are serialised.
+ */
+public class SharedMemorySolver implements ForceSolver, AutoCloseable {
+    static final long MAGIC = 0x5344534d454d3031L; // "SDSMEM01"
+    static final int MAGIC_OFFSET = 0;
+    static final int COUNT_OFFSET = 8;
+    static final int WORKERS_OFFSET = 16;
+    static final int GENERATION_OFFSET = 24;
+    static final int GM2_OFFSET = 32;
+    static final int SOFTENING_OFFSET = 40;
+    // One cache line per worker, holding the generation it finished and its inverse distance sum
+    static final int SLOTS_OFFSET = 64;
+    static final int SLOT_SIZE = 64;
+    static final long SHUTDOWN = -1;
+    static final long STARTING = -2;
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final long SPINS_BEFORE_PARKING = 10_000;
+    private static final long PARK_NANOS = 20_000;
+    private static final long HEALTH_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long STARTUP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final int workerCount;
+    private final List<String> workerJvmOptions;
+    private final Object lock = new Object();
+    private Thread shutdownHook;
+    private final List<Process> workers = new ArrayList<>();
+    private Path file;
+    private MappedByteBuffer buffer;
+    private int particleCount = -1;
+    private long generation;
+
+    public SharedMemorySolver(int workerCount) {
+        this(workerCount, List.of());
+    }
+
+    /**
+     * @param workerJvmOptions extra options for the worker JVMs, such as a heap size or {@code -XX:+UseNUMA}
+     */
+    public SharedMemorySolver(int workerCount, List<String> workerJvmOptions) {
+        if (workerCount <= 0)
+            throw new IllegalArgumentException("Worker count must be positive");
+        this.workerCount = workerCount;
+        this.workerJvmOptions = List.copyOf(workerJvmOptions);
+    }
+
+    public int workerCount() {
+        return workerCount;
+    }
+
+    static int positionsOffset(int workers) {
+        return checkedSize(SLOTS_OFFSET + (long) workers * SLOT_SIZE, workers, 0);
+    }
+
+    static int forcesOffset(int workers, int n) {
+        return checkedSize(positionsOffset(workers) + (long) Particle.DIMENSION * n * Double.BYTES, workers, n);
+    }
+
+    static int fileSize(int workers, int n) {
+        return checkedSize(forcesOffset(workers, n) + (long) Particle.DIMENSION * n * Double.BYTES, workers, n);
+    }
+
+    /**
+     * The whole file is one mapped buffer, so every offset must stay within int range.
+     */
+    private static int checkedSize(long size, int workers, int n) {
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("%d particles and %d workers need %d bytes, more than a single shared mapping holds"
+                    .formatted(n, workers, size));
+        return (int) size;
+    }
+
+    /**
+     * First target of worker {@code w}, the blocks are as even as possible.
+     */
+    static int blockStart(int w, int workers, int n) {
+        return (int) ((long) n * w / workers);
+    }
+
+    @Override
+    public void computeForces(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        computeForcesAndPotential(x, y, z, GM2, h, forces);
+    }
+
+    @Override
+    public double computeForcesAndPotential(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        final int n = x.length;
+        synchronized (lock) {
+            if (n != particleCount)
+                start(n);
+            final int positions = positionsOffset(workerCount);
+            buffer.asDoubleBuffer().position(positions / Double.BYTES).put(x).put(y).put(z);
+            buffer.putDouble(GM2_OFFSET, GM2);
+            buffer.putDouble(SOFTENING_OFFSET, h);
+            generation++;
+            LONGS.setRelease(buffer, GENERATION_OFFSET, generation);
+            awaitWorkers(generation, 0);
+            final int forceIndex = forcesOffset(workerCount, n) / Double.BYTES;
+            var view = buffer.asDoubleBuffer();
+            for (int d = 0; d < Particle.DIMENSION; d++)
+                view.get(forceIndex + d * n, forces[d], 0, n);
+            double inverseDistances = 0;
+            for (int w = 0; w < workerCount; w++)
+                inverseDistances += buffer.getDouble(SLOTS_OFFSET + w * SLOT_SIZE + Long.BYTES);
+            // Every pair is seen from both of its targets
+            return -GM2 * inverseDistances / 2;
+        }
+    }
+
+    private void start(int n) {
+        final int size = fileSize(workerCount, n);
+        stopWorkers();
+        try {
+            file = Files.createTempFile(sharedDirectory(), "forces", ".shm");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putLong(COUNT_OFFSET, n);
+            buffer.putLong(WORKERS_OFFSET, workerCount);
+            generation = 0;
+            LONGS.setRelease(buffer, GENERATION_OFFSET, generation);
+            for (int w = 0; w < workerCount; w++)
+                LONGS.setRelease(buffer, SLOTS_OFFSET + w * SLOT_SIZE, STARTING);
+            LONGS.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+            String java = ProcessHandle.current().info().command().orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            for (int w = 0; w < workerCount; w++) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.addAll(workerJvmOptions);
+                command.addAll(List.of("-cp", System.getProperty("java.class.path"), SharedMemoryWorker.class.getName(),
+                        file.toString(), String.valueOf(w)));
+                workers.add(new ProcessBuilder(command).inheritIO().start());
+            }
+        } catch (IOException e) {
+            stopWorkers();
+            throw new UncheckedIOException("Could not start the force workers", e);
+        }
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(this::close);
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+        particleCount = n;
+        // Workers report generation 0 once they have mapped the file
+        awaitWorkers(0, STARTUP_TIMEOUT_NANOS);
+    }
+
+    /**
+     * The page cache backed tmpfs when there is one, so that the mapping never reaches a disk.
+     */
+    private static Path sharedDirectory() {
+        Path shm = Path.of("/dev/shm");
+        return Files.isDirectory(shm) && Files.isWritable(shm) ? shm : Path.of(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * Waits until every worker reports {@code target}, failing if one exits or, for a positive timeout, if it takes
+     * longer than that.
+     */
+    private void awaitWorkers(long target, long timeoutNanos) {
+        long spins = 0;
+        long deadline = System.nanoTime() + timeoutNanos;
+        long nextCheck = System.nanoTime() + HEALTH_CHECK_NANOS;
+        for (int w = 0; w < workerCount; w++) {
+            while ((long) LONGS.getAcquire(buffer, SLOTS_OFFSET + w * SLOT_SIZE) != target) {
+                if (++spins < SPINS_BEFORE_PARKING) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                LockSupport.parkNanos(PARK_NANOS);
+                long now = System.nanoTime();
+                if (now - nextCheck >= 0) {
+                    checkWorkers(timeoutNanos > 0 && now - deadline >= 0);
+                    nextCheck = now + HEALTH_CHECK_NANOS;
+                }
+            }
+        }
+    }
+
+    private void checkWorkers(boolean timedOut) {
+        for (int w = 0; w < workers.size(); w++) {
+            Process worker = workers.get(w);
+            if (!worker.isAlive()) {
+                int exitCode = worker.exitValue();
+                close();
+                throw new IllegalStateException("Force worker %d exited with code %d".formatted(w, exitCode));
+            }
+        }
+        if (timedOut) {
+            close();
+            throw new IllegalStateException("Force workers did not start in time");
+        }
+    }
+
+    private void stopWorkers() {
+        if (buffer != null)
+            LONGS.setRelease(buffer, GENERATION_OFFSET, SHUTDOWN);
+        for (Process worker : workers) {
+            try {
+                if (!worker.waitFor(5, TimeUnit.SECONDS))
+                    worker.destroyForcibly();
+            } catch (InterruptedException e) {
+                worker.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.clear();
+        buffer = null;
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Left behind in the temporary directory
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * Copies share the workers, which only ever serve one call at a time.
+     */
+    @Override
+    public ForceSolver copy() {
+        return this;
+    }
+
+    @Override
+    public void close() {
+        Thread hook;
+        synchronized (lock) {
+            stopWorkers();
+            particleCount = -1;
+            hook = shutdownHook;
+            shutdownHook = null;
+        }
+        if (hook == null)
+            return;
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException ignored) {
+            // Already shutting down
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import static engine.SharedMemorySolver.*;
+
+/**
+ * Worker process of {@link SharedMemorySolver}, started as {@code SharedMemoryWorker <file> <index>}. It computes the
+ * forces on its block of targets from every source for each generation published by the coordinator, and exits on
+ * shutdown or once the coordinator is gone.
+ */
+public class SharedMemoryWorker {
+    private static final long SPINS_BEFORE_PARKING = 10_000;
+    private static final long PARK_NANOS = 20_000;
+    private static final long PARENT_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2)
+            throw new IllegalArgumentException("Usage: SharedMemoryWorker <file> <index>");
+        Path file = Path.of(args[0]);
+        int index = Integer.parseInt(args[1]);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        if ((long) LONGS.getAcquire(buffer, MAGIC_OFFSET) != MAGIC)
+            throw new IllegalStateException("Not a shared force file: " + file);
+        final int n = (int) buffer.getLong(COUNT_OFFSET);
+        final int workers = (int) buffer.getLong(WORKERS_OFFSET);
+        final int slot = SLOTS_OFFSET + index * SLOT_SIZE;
+        final int from = blockStart(index, workers, n);
+        final int to = blockStart(index + 1, workers, n);
+        final double[] x = new double[n], y = new double[n], z = new double[n];
+        final double[][] forces = new double[Particle.DIMENSION][to - from];
+        final double[] rowPotential = new double[to - from];
+        final DoubleBuffer doubles = buffer.asDoubleBuffer();
+        final int positionIndex = positionsOffset(workers) / Double.BYTES;
+        final int forceIndex = forcesOffset(workers, n) / Double.BYTES;
+        final ProcessHandle parent = ProcessHandle.current().parent().orElse(null);
+
+        LONGS.setRelease(buffer, slot, 0L);
+        long done = 0;
+        while (true) {
+            long generation = awaitNewGeneration(buffer, done, parent);
+            if (generation == SHUTDOWN)
+                return;
+            doubles.get(positionIndex, x).get(positionIndex + n, y).get(positionIndex + 2 * n, z);
+            final double GM2 = buffer.getDouble(GM2_OFFSET);
+            final double h2 = buffer.getDouble(SOFTENING_OFFSET) * buffer.getDouble(SOFTENING_OFFSET);
+            IntStream.range(from, to).parallel().forEach(i -> {
+                final double xi = x[i], yi = y[i], zi = z[i];
+                double fx = 0, fy = 0, fz = 0, potential = 0;
+                for (int j = 0; j < n; j++) {
+                    if (j == i)
+                        continue;
+                    final double dx = xi - x[j];
+                    final double dy = yi - y[j];
+                    final double dz = zi - z[j];
+                    final double invDist = 1.0 / Math.sqrt(dx*dx + dy*dy + dz*dz + h2);
+                    final double invDist3 = invDist * invDist * invDist;
+                    potential += invDist;
+                    fx += dx * invDist3;
+                    fy += dy * invDist3;
+                    fz += dz * invDist3;
+                }
+                forces[0][i - from] = -GM2 * fx;
+                forces[1][i - from] = -GM2 * fy;
+                forces[2][i - from] = -GM2 * fz;
+                rowPotential[i - from] = potential;
+            });
+            double inverseDistances = 0;
+            for (double row : rowPotential)
+                inverseDistances += row;
+            for (int d = 0; d < Particle.DIMENSION; d++)
+                doubles.put(forceIndex + d * n + from, forces[d]);
+            buffer.putDouble(slot + Long.BYTES, inverseDistances);
+            LONGS.setRelease(buffer, slot, generation);
+            done = generation;
+        }
+    }
+
+    private static long awaitNewGeneration(MappedByteBuffer buffer, long done, ProcessHandle parent) {
+        long spins = 0;
+        long nextCheck = System.nanoTime() + PARENT_CHECK_NANOS;
+        while (true) {
+            long generation = (long) LONGS.getAcquire(buffer, GENERATION_OFFSET);
+            if (generation != done)
+                return generation;
+            if (++spins < SPINS_BEFORE_PARKING) {
+                Thread.onSpinWait();
+                continue;
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+            long now = System.nanoTime();
+            if (now - nextCheck >= 0) {
+                if (parent != null && !parent.isAlive())
+                    return SHUTDOWN;
+                nextCheck = now + PARENT_CHECK_NANOS;
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package engine;
+
+/**
+ * Receives sampled frames of an {@link EstimationMethod#run}. The frame and the model reflect the live integrator
+ * state and are only valid during the call.
+ */
+@FunctionalInterface
+public interface StepObserver {
+
+    void observe(Time time, MovementModel model);
+}
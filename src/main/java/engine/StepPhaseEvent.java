@@ -0,0 +1,28 @@
+package engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event committed by {@link Metrics} for every timed phase, only while metrics are enabled.
+ */
+@Name("engine.StepPhase")
+@Label("Step Phase")
+@Category("Simulation")
+@Description("Time spent in one phase of an integration step")
+@StackTrace(false)
+class StepPhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Step")
+    long step;
+
+    @Label("Phase Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long phaseDuration;
+}
@@ -2,5 +2,9 @@ package engine;
 
 import java.util.List;
 
+/**
+ * Frames handed out by the estimation iterators hold a live view of the integrator state, which changes on the
+ * next step. Consumers that process a frame later have to snapshot it first.
+ */
 public record Time(double time, List<Particle> particles) {
 }
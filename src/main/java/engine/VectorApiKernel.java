@@ -0,0 +1,95 @@
+package engine;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.stream.IntStream;
+
+/**
+ * Only loaded by {@link VectorizedSolver} once the vector module is known to be present. The vector loop skips the
+ * block of lanes holding body i, which joins the scalar tail where the self pair is left out, so the inner loop needs
+ * no branch or mask and the potential needs no {@code 1 / h} correction, which would cancel the pair sum for a small
+ * softening.
+ */
+class VectorApiKernel implements ForceSolver {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private double[] rowPotential = new double[0];
+
+    @Override
+    public void computeForces(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        computeForcesAndPotential(x, y, z, GM2, h, forces);
+    }
+
+    @Override
+    public double computeForcesAndPotential(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        final int n = x.length;
+        if (rowPotential.length != n)
+            rowPotential = new double[n];
+        final double[] potential = rowPotential;
+        final double h2 = h * h;
+        final int upperBound = SPECIES.loopBound(n);
+        final DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+        final DoubleVector softening = DoubleVector.broadcast(SPECIES, h2);
+        IntStream.range(0, n).parallel().forEach(i -> {
+            final DoubleVector xi = DoubleVector.broadcast(SPECIES, x[i]);
+            final DoubleVector yi = DoubleVector.broadcast(SPECIES, y[i]);
+            final DoubleVector zi = DoubleVector.broadcast(SPECIES, z[i]);
+            DoubleVector fx = DoubleVector.zero(SPECIES);
+            DoubleVector fy = DoubleVector.zero(SPECIES);
+            DoubleVector fz = DoubleVector.zero(SPECIES);
+            DoubleVector pi = DoubleVector.zero(SPECIES);
+            final int selfStart = i - i % SPECIES.length();
+            int j = 0;
+            int end = Math.min(selfStart, upperBound);
+            while (true) {
+                for (; j < end; j += SPECIES.length()) {
+                    DoubleVector dx = xi.sub(DoubleVector.fromArray(SPECIES, x, j));
+                    DoubleVector dy = yi.sub(DoubleVector.fromArray(SPECIES, y, j));
+                    DoubleVector dz = zi.sub(DoubleVector.fromArray(SPECIES, z, j));
+                    DoubleVector r2 = dx.fma(dx, dy.fma(dy, dz.fma(dz, softening)));
+                    DoubleVector invDist = one.div(r2.sqrt());
+                    DoubleVector invDist3 = invDist.mul(invDist).mul(invDist);
+                    pi = pi.add(invDist);
+                    fx = dx.fma(invDist3, fx);
+                    fy = dy.fma(invDist3, fy);
+                    fz = dz.fma(invDist3, fz);
+                }
+                if (end == upperBound)
+                    break;
+                // The block holding body i is left to the scalar loop
+                j = end + SPECIES.length();
+                end = upperBound;
+            }
+            double sx = fx.reduceLanes(VectorOperators.ADD);
+            double sy = fy.reduceLanes(VectorOperators.ADD);
+            double sz = fz.reduceLanes(VectorOperators.ADD);
+            double sp = pi.reduceLanes(VectorOperators.ADD);
+            // Scalar pass over the skipped block holding body i, if any, then over the tail past the last full vector
+            final int blockEnd = selfStart < upperBound ? selfStart + SPECIES.length() : -1;
+            for (j = Math.min(selfStart, upperBound); j < n; j = j + 1 == blockEnd ? upperBound : j + 1) {
+                if (j == i)
+                    continue;
+                final double dx = x[i] - x[j];
+                final double dy = y[i] - y[j];
+                final double dz = z[i] - z[j];
+                final double invDist = 1.0 / Math.sqrt(dx*dx + dy*dy + dz*dz + h2);
+                final double invDist3 = invDist * invDist * invDist;
+                sp += invDist;
+                sx += dx * invDist3;
+                sy += dy * invDist3;
+                sz += dz * invDist3;
+            }
+            forces[0][i] = -GM2 * sx;
+            forces[1][i] = -GM2 * sy;
+            forces[2][i] = -GM2 * sz;
+            potential[i] = sp;
+        });
+        double inverseDistances = 0;
+        for (int i = 0; i < n; i++)
+            inverseDistances += potential[i];
+        // Every pair was visited from both ends
+        return -GM2 * inverseDistances / 2;
+    }
+}
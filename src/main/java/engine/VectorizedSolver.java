@@ -0,0 +1,51 @@
+package engine;
+
+/**
+ * Direct summation that evaluates several pairs at a time in SIMD lanes through the incubating
+ * {@code jdk.incubator.vector} API. The JVM has to be started with {@code --add-modules jdk.incubator.vector};
+ * otherwise it falls back to the scalar {@link DirectSumSolver}.
+ */
+public class VectorizedSolver implements ForceSolver {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private final ForceSolver kernel;
+    private final DirectSumSolver fallback;
+
+    public VectorizedSolver() {
+        this.kernel = isVectorApiAvailable() ? new VectorApiKernel() : null;
+        this.fallback = new DirectSumSolver();
+    }
+
+    public static boolean isVectorApiAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    public boolean isVectorized() {
+        return kernel != null;
+    }
+
+    @Override
+    public ForceSolver copy() {
+        return new VectorizedSolver();
+    }
+
+    @Override
+    public void computeForces(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        if (kernel != null)
+            kernel.computeForces(x, y, z, GM2, h, forces);
+        else
+            fallback.computeForces(x, y, z, GM2, h, forces);
+    }
+
+    @Override
+    public double computeForcesAndPotential(double[] x, double[] y, double[] z, double GM2, double h, double[][] forces) {
+        if (kernel != null)
+            return kernel.computeForcesAndPotential(x, y, z, GM2, h, forces);
+        return fallback.computeForcesAndPotential(x, y, z, GM2, h, forces);
+    }
+
+    @Override
+    public double computePotential(double[] x, double[] y, double[] z, double GM2, double h) {
+        return fallback.computePotential(x, y, z, GM2, h);
+    }
+}
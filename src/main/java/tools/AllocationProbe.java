@@ -0,0 +1,91 @@
+package tools;
+
+import engine.DampedOscillator;
+import engine.EstimationMethod;
+import engine.GravitationalSystem;
+import engine.MovementModel;
+import engine.Particle;
+import engine.Time;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Measures the bytes allocated by the integrating thread per step of every estimation method, and exits with a non
+ * zero code if any of them goes over budget. Steady state stepping of the integrators must allocate nothing besides
+ * the returned Time, measured here on the same JVM, and {@link #SOLVER_OVERHEAD_BYTES} for the force solver: the
+ * direct sum allocates its capturing pair kernel on every evaluation when escape analysis does not remove it.
+ */
+public class AllocationProbe {
+    private static final int WARMUP_STEPS = 20_000;
+    private static final int MEASURED_STEPS = 10_000;
+    private static final double DELTA_T = 1e-4;
+    private static final long SOLVER_OVERHEAD_BYTES = 64;
+    // Keeps the measured Time records from being scalar replaced
+    private static volatile Time sink;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported())
+            throw new IllegalStateException("Thread allocation accounting is not supported by this JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        double budget = timeRecordBytes(threads) + SOLVER_OVERHEAD_BYTES;
+        System.out.printf("Budget: %.1f bytes/step%n", budget);
+
+        MovementModel oscillator = new DampedOscillator(Math.pow(10, 4), 100, 1, 70);
+        List<Particle> particles = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 64; i++)
+            particles.add(new Particle(random.nextGaussian(), random.nextGaussian(), random.nextGaussian(), 0, 0, 0, 0));
+        MovementModel gravitational = new GravitationalSystem(particles, 1, 1, 0.1);
+
+        int overBudget = 0;
+        for (MovementModel model : List.of(oscillator, gravitational)) {
+            EstimationMethod method = new EstimationMethod(model, DELTA_T, Double.MAX_VALUE);
+            overBudget += report(threads, model, "Verlet", method, EstimationMethod::verletEstimation, budget);
+            overBudget += report(threads, model, "Beeman", method, EstimationMethod::beemanEstimation, budget);
+            overBudget += report(threads, model, "Gear", method, EstimationMethod::gearEstimation, budget);
+        }
+        if (overBudget > 0) {
+            System.out.println(overBudget + " estimation(s) over budget");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Size of one Time record on this JVM, which depends on its object layout.
+     */
+    private static double timeRecordBytes(com.sun.management.ThreadMXBean threads) {
+        List<Particle> particles = List.of();
+        for (int i = 0; i < WARMUP_STEPS; i++)
+            sink = new Time(i, particles);
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_STEPS; i++)
+            sink = new Time(i, particles);
+        return (double) (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_STEPS;
+    }
+
+    /**
+     * @return 1 if the estimation allocates more than {@code budget} bytes per step, 0 otherwise
+     */
+    private static int report(com.sun.management.ThreadMXBean threads, MovementModel model, String name,
+                              EstimationMethod method, Function<EstimationMethod, Iterator<Time>> estimation, double budget) {
+        Iterator<Time> iterator = estimation.apply(method);
+        for (int i = 0; i < WARMUP_STEPS; i++)
+            iterator.next();
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_STEPS; i++)
+            iterator.next();
+        double perStep = (double) (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_STEPS;
+        boolean over = perStep > budget;
+        System.out.printf("%s %s: %.1f bytes/step%s%n", model.getClass().getSimpleName(), name, perStep, over ? " OVER BUDGET" : "");
+        return over ? 1 : 0;
+    }
+}
@@ -0,0 +1,132 @@
+package tools;
+
+import engine.ParticleStore;
+import engine.Time;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Moves frame output off the integrating thread. Every accepted frame is copied into a pooled snapshot and queued
+ * on a bounded ring buffer; a single background thread hands the snapshots to the outputs in order and returns
+ * them to the pool. When every snapshot is in flight {@link #accept(Time)} blocks until the writer catches up.
+ * Outputs are owned by the caller and must be closed after this writer.
+ */
+public class AsyncFrameWriter implements Consumer<Time>, Closeable {
+    private static final Frame END = new Frame(null);
+    private static final long FAILURE_CHECK_INTERVAL_MS = 100;
+
+    private final List<Consumer<Time>> outputs;
+    private final BlockingQueue<Frame> free;
+    private final BlockingQueue<Frame> filled;
+    private final int capacity;
+    private final Thread writer;
+    private volatile Throwable failure;
+    private int pooled;
+    private boolean closed;
+
+    public AsyncFrameWriter(int capacity, List<Consumer<Time>> outputs) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+        this.outputs = List.copyOf(outputs);
+        this.free = new ArrayBlockingQueue<>(capacity);
+        // One extra slot so the end marker never waits for a free frame
+        this.filled = new ArrayBlockingQueue<>(capacity + 1);
+        this.writer = new Thread(this::drain, "frame-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void accept(Time time) {
+        checkFailure();
+        if (closed)
+            throw new IllegalStateException("Writer already closed");
+        try {
+            // Snapshots are created lazily, up to the capacity, and recycled afterwards
+            Frame frame = free.poll();
+            if (frame == null)
+                frame = pooled < capacity ? newFrame(time) : takeFree();
+            frame.snapshot(time);
+            filled.put(frame);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing frame", e);
+        }
+    }
+
+    private Frame newFrame(Time time) {
+        pooled++;
+        return new Frame(storeOf(time).copy());
+    }
+
+    private Frame takeFree() throws InterruptedException {
+        Frame frame;
+        while ((frame = free.poll(FAILURE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) == null)
+            checkFailure();
+        return frame;
+    }
+
+    private static ParticleStore storeOf(Time time) {
+        return time.particles() instanceof ParticleStore.View view ? view.store() : ParticleStore.of(time.particles());
+    }
+
+    private void drain() {
+        try {
+            Frame frame;
+            while ((frame = filled.take()) != END) {
+                Time snapshot = new Time(frame.time, frame.store.asList());
+                for (Consumer<Time> output : outputs)
+                    output.accept(snapshot);
+                free.put(frame);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null)
+            throw new RuntimeException("Error writing frame", failure);
+    }
+
+    /**
+     * Waits for every queued frame to be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            filled.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing frames", e);
+        }
+        checkFailure();
+    }
+
+    private static class Frame {
+        private final ParticleStore store;
+        private double time;
+
+        Frame(ParticleStore store) {
+            this.store = store;
+        }
+
+        void snapshot(Time source) {
+            time = source.time();
+            store.copyFrom(storeOf(source));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package tools;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout shared by {@link BinaryTrajectoryWriter} and {@link BinaryTrajectoryReader}. Everything is little endian:
+ * <pre>
+ * header (64 bytes)  magic, format version, particle count, bytes per value, column count,
+ *                    frame count, index offset, data offset
+ * particle table     particle ids (int) followed by their species (short length + UTF-8)
+ * frames             time (float64) then the x, y, z, vx, vy, vz columns, each holding one value per particle
+ * frame index        offset (long) of every frame
+ * </pre>
+ * Frames have a fixed size and the frame count is updated after every frame, so a file whose index was never
+ * written (an interrupted run) can still be read.
+ */
+final class BinaryTrajectoryFormat {
+    static final byte[] MAGIC = "SDSTRAJ1".getBytes(StandardCharsets.US_ASCII);
+    static final int FORMAT_VERSION = 1;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    static final int HEADER_SIZE = 64;
+    static final int COLUMNS = 6;
+    static final int TIME_SIZE = Double.BYTES;
+
+    static final int VERSION_POSITION = 8;
+    static final int PARTICLE_COUNT_POSITION = 12;
+    static final int BYTES_PER_VALUE_POSITION = 16;
+    static final int COLUMNS_POSITION = 20;
+    static final int FRAME_COUNT_POSITION = 24;
+    static final int INDEX_OFFSET_POSITION = 32;
+    static final int DATA_OFFSET_POSITION = 40;
+
+    private BinaryTrajectoryFormat() {
+    }
+
+    static long frameSize(int particleCount, int bytesPerValue) {
+        return TIME_SIZE + (long) COLUMNS * particleCount * bytesPerValue;
+    }
+}
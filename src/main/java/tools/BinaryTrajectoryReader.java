@@ -0,0 +1,146 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static tools.BinaryTrajectoryFormat.*;
+
+/**
+ * Random access to the frames of a file written by {@link BinaryTrajectoryWriter}. The file is memory mapped in
+ * segments holding a whole number of frames, reads use absolute offsets so a reader can be shared between threads.
+ */
+public class BinaryTrajectoryReader implements TrajectorySource {
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final int particleCount;
+    private final int bytesPerValue;
+    private final long frameSize;
+    private final int frameCount;
+    private final long[] frameOffsets;
+    private final int[] ids;
+    private final String[] types;
+    private final int framesPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    public BinaryTrajectoryReader(String path) {
+        try {
+            channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+            channel.read(header, 0);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(0, magic);
+            if (!Arrays.equals(magic, MAGIC) || header.getInt(VERSION_POSITION) != FORMAT_VERSION)
+                throw new IllegalArgumentException(path + " is not a binary trajectory file");
+            particleCount = header.getInt(PARTICLE_COUNT_POSITION);
+            bytesPerValue = header.getInt(BYTES_PER_VALUE_POSITION);
+            frameCount = (int) header.getLong(FRAME_COUNT_POSITION);
+            long indexOffset = header.getLong(INDEX_OFFSET_POSITION);
+            long dataOffset = header.getLong(DATA_OFFSET_POSITION);
+            frameSize = frameSize(particleCount, bytesPerValue);
+
+            ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, dataOffset - HEADER_SIZE).order(ORDER);
+            ids = new int[particleCount];
+            types = new String[particleCount];
+            for (int i = 0; i < particleCount; i++)
+                ids[i] = table.getInt();
+            for (int i = 0; i < particleCount; i++) {
+                byte[] species = new byte[table.getShort()];
+                table.get(species);
+                types[i] = new String(species, StandardCharsets.UTF_8);
+            }
+
+            frameOffsets = new long[frameCount];
+            if (indexOffset != 0) {
+                ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) frameCount * Long.BYTES).order(ORDER);
+                for (int i = 0; i < frameCount; i++)
+                    frameOffsets[i] = index.getLong();
+            } else {
+                for (int i = 0; i < frameCount; i++)
+                    frameOffsets[i] = dataOffset + i * frameSize;
+            }
+
+            framesPerSegment = (int) Math.max(1, MAX_SEGMENT_SIZE / frameSize);
+            segments = new MappedByteBuffer[(frameCount + framesPerSegment - 1) / framesPerSegment];
+            for (int s = 0; s < segments.length; s++) {
+                int frames = Math.min(framesPerSegment, frameCount - s * framesPerSegment);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, frameOffsets[s * framesPerSegment], frames * frameSize);
+                segments[s].order(ORDER);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading file", e);
+        }
+    }
+
+    @Override
+    public int particleCount() {
+        return particleCount;
+    }
+
+    @Override
+    public int frameCount() {
+        return frameCount;
+    }
+
+    public boolean isSinglePrecision() {
+        return bytesPerValue == Float.BYTES;
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public String type(int index) {
+        return types[index];
+    }
+
+    @Override
+    public double time(int frame) {
+        return segment(frame).getDouble(offsetInSegment(frame));
+    }
+
+    /**
+     * Raw bytes of a frame: its time followed by the six value columns.
+     */
+    public ByteBuffer frameBytes(int frame) {
+        return segment(frame).slice(offsetInSegment(frame), (int) frameSize).order(ORDER);
+    }
+
+    /**
+     * Fills {@code columns[c][i]} with column c (x, y, z, vx, vy, vz) of particle i.
+     */
+    @Override
+    public void readFrame(int frame, double[][] columns) {
+        ByteBuffer bytes = frameBytes(frame);
+        bytes.position(TIME_SIZE);
+        for (int c = 0; c < COLUMNS; c++) {
+            if (bytesPerValue == Double.BYTES) {
+                bytes.asDoubleBuffer().get(columns[c], 0, particleCount);
+                bytes.position(bytes.position() + particleCount * Double.BYTES);
+            } else {
+                for (int i = 0; i < particleCount; i++)
+                    columns[c][i] = bytes.getFloat();
+            }
+        }
+    }
+
+    private MappedByteBuffer segment(int frame) {
+        return segments[frame / framesPerSegment];
+    }
+
+    private int offsetInSegment(int frame) {
+        return (int) (frameOffsets[frame] - frameOffsets[(frame / framesPerSegment) * framesPerSegment]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
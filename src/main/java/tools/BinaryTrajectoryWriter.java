@@ -0,0 +1,262 @@
+package tools;
+
+import engine.Metrics;
+import engine.Particle;
+import engine.ParticleStore;
+import engine.Time;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static tools.BinaryTrajectoryFormat.*;
+
+/**
+ * Writes frames in the binary columnar format described in {@link BinaryTrajectoryFormat} through a sliding
+ * memory mapped window. Frames are stored as float64, or as float32 when single precision is requested.
+ */
+public class BinaryTrajectoryWriter implements TrajectoryOutput {
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    private final FileChannel channel;
+    private final int particleCount;
+    private final int bytesPerValue;
+    private final long frameSize;
+    private final long dataOffset;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long[] frameOffsets = new long[1024];
+    private int frameCount;
+    private final double[] column;
+
+    public BinaryTrajectoryWriter(String outputName, List<Particle> particles, boolean singlePrecision) {
+        this(outputName, particles, singlePrecision, false, 0);
+    }
+
+    /**
+     * Reopens a trajectory of the same particles to continue a resumed run: frames later than {@code time} are cut
+     * off, along with the index of a closed file, and new frames are written after the others. A missing or empty
+     * file is started afresh.
+     */
+    public static BinaryTrajectoryWriter resume(String outputName, List<Particle> particles, boolean singlePrecision, double time) {
+        Path path = Path.of(outputName);
+        try {
+            boolean existing = Files.exists(path) && Files.size(path) > 0;
+            return new BinaryTrajectoryWriter(outputName, particles, singlePrecision, existing, time);
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening file", e);
+        }
+    }
+
+    private BinaryTrajectoryWriter(String outputName, List<Particle> particles, boolean singlePrecision, boolean resume, double time) {
+        this.particleCount = particles.size();
+        this.bytesPerValue = singlePrecision ? Float.BYTES : Double.BYTES;
+        this.frameSize = frameSize(particleCount, bytesPerValue);
+        this.column = new double[particleCount];
+        try {
+            if (resume) {
+                channel = FileChannel.open(Path.of(outputName), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                dataOffset = keepFrames(outputName, time);
+            } else {
+                channel = FileChannel.open(Path.of(outputName), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                dataOffset = writeHeader(particles);
+            }
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ORDER);
+            header.putLong(FRAME_COUNT_POSITION, frameCount);
+            header.putLong(INDEX_OFFSET_POSITION, 0);
+            mapWindow(frameCount == 0 ? dataOffset : frameOffsets[frameCount - 1] + frameSize);
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening file", e);
+        }
+    }
+
+    /**
+     * Writes the header and particle table of an empty file and returns where the frames start.
+     */
+    private long writeHeader(List<Particle> particles) throws IOException {
+        ByteBuffer table = particleTable(particles);
+        long tableEnd = HEADER_SIZE + table.remaining();
+        // Frames start 8 byte aligned so they can be viewed as double buffers
+        long dataOffset = (tableEnd + 7) & ~7L;
+        ByteBuffer initialHeader = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+        initialHeader.put(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putInt(particleCount)
+                .putInt(bytesPerValue)
+                .putInt(COLUMNS)
+                .putLong(0)
+                .putLong(0)
+                .putLong(dataOffset)
+                .flip();
+        initialHeader.limit(HEADER_SIZE);
+        channel.write(initialHeader, 0);
+        channel.write(table, HEADER_SIZE);
+        return dataOffset;
+    }
+
+    /**
+     * Checks that an existing file holds frames of this writer's shape, keeps those up to {@code time}, found
+     * through its frame index or, if it was never closed, its frame count, and truncates the rest. Returns where the
+     * frames start.
+     */
+    private long keepFrames(String outputName, double time) throws IOException {
+        ByteBuffer existing = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+        channel.read(existing, 0);
+        byte[] magic = new byte[MAGIC.length];
+        existing.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC) || existing.getInt(VERSION_POSITION) != FORMAT_VERSION)
+            throw new IllegalArgumentException(outputName + " is not a binary trajectory file");
+        if (existing.getInt(PARTICLE_COUNT_POSITION) != particleCount || existing.getInt(BYTES_PER_VALUE_POSITION) != bytesPerValue)
+            throw new IllegalArgumentException("%s holds %d particles with %d bytes per value, cannot continue it with %d particles with %d"
+                    .formatted(outputName, existing.getInt(PARTICLE_COUNT_POSITION), existing.getInt(BYTES_PER_VALUE_POSITION),
+                            particleCount, bytesPerValue));
+        int storedCount = (int) existing.getLong(FRAME_COUNT_POSITION);
+        long indexOffset = existing.getLong(INDEX_OFFSET_POSITION);
+        long dataOffset = existing.getLong(DATA_OFFSET_POSITION);
+        long[] offsets = new long[storedCount];
+        if (indexOffset != 0) {
+            ByteBuffer index = ByteBuffer.allocate(storedCount * Long.BYTES).order(ORDER);
+            channel.read(index, indexOffset);
+            for (int i = 0; i < storedCount; i++)
+                offsets[i] = index.getLong(i * Long.BYTES);
+        } else {
+            for (int i = 0; i < storedCount; i++)
+                offsets[i] = dataOffset + i * frameSize;
+        }
+
+        // New frames go right after the last kept one, so only a run of frames laid out back to back can be kept
+        long size = channel.size();
+        ByteBuffer frameTime = ByteBuffer.allocate(TIME_SIZE).order(ORDER);
+        int kept = 0;
+        while (kept < storedCount && offsets[kept] == (kept == 0 ? dataOffset : offsets[kept - 1] + frameSize)
+                && offsets[kept] + frameSize <= size) {
+            channel.read(frameTime.clear(), offsets[kept]);
+            if (frameTime.getDouble(0) > time)
+                break;
+            kept++;
+        }
+        if (kept > frameOffsets.length)
+            frameOffsets = new long[kept];
+        System.arraycopy(offsets, 0, frameOffsets, 0, kept);
+        frameCount = kept;
+        channel.truncate(kept == 0 ? dataOffset : offsets[kept - 1] + frameSize);
+        return dataOffset;
+    }
+
+    private static ByteBuffer particleTable(List<Particle> particles) {
+        byte[][] species = new byte[particles.size()][];
+        int size = Integer.BYTES * particles.size();
+        for (int i = 0; i < particles.size(); i++) {
+            species[i] = particles.get(i).getType().getBytes(StandardCharsets.UTF_8);
+            size += Short.BYTES + species[i].length;
+        }
+        ByteBuffer table = ByteBuffer.allocate(size).order(ORDER);
+        for (Particle p : particles)
+            table.putInt(p.getId());
+        for (byte[] s : species)
+            table.putShort((short) s.length).put(s);
+        return table.flip();
+    }
+
+    private void mapWindow(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(WINDOW_SIZE, frameSize));
+        window.order(ORDER);
+    }
+
+    private long position() {
+        return windowStart + window.position();
+    }
+
+    @Override
+    public void processTime(Time time) {
+        List<Particle> particles = time.particles();
+        if (particles.size() != particleCount)
+            throw new IllegalArgumentException("Expected %d particles but got %d".formatted(particleCount, particles.size()));
+        long start = Metrics.ENABLED ? Metrics.start() : 0;
+        try {
+            if (window.remaining() < frameSize)
+                mapWindow(position());
+            if (frameCount == frameOffsets.length)
+                frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+            frameOffsets[frameCount++] = position();
+            window.putDouble(time.time());
+            ParticleStore store = particles instanceof ParticleStore.View view ? view.store() : null;
+            for (int c = 0; c < COLUMNS; c++)
+                writeColumn(c < Particle.DIMENSION ? column(store, particles, c, true) : column(store, particles, c - Particle.DIMENSION, false));
+            header.putLong(FRAME_COUNT_POSITION, frameCount);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing on output file", e);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.addBytes(frameSize);
+            Metrics.end(Metrics.Phase.OUTPUT, start);
+        }
+    }
+
+    /**
+     * The binary format does not distinguish animation frames, both entry points write the same frame.
+     */
+    @Override
+    public void processTimeAnim(Time time) {
+        processTime(time);
+    }
+
+    private double[] column(ParticleStore store, List<Particle> particles, int axis, boolean position) {
+        if (store != null)
+            return position ? store.position(axis) : store.speed(axis);
+        for (int i = 0; i < particleCount; i++) {
+            Particle p = particles.get(i);
+            column[i] = switch (axis) {
+                case 0 -> position ? p.getX() : p.getSpeedX();
+                case 1 -> position ? p.getY() : p.getSpeedY();
+                default -> position ? p.getZ() : p.getSpeedZ();
+            };
+        }
+        return column;
+    }
+
+    private void writeColumn(double[] values) {
+        if (bytesPerValue == Double.BYTES) {
+            DoubleBuffer doubles = window.asDoubleBuffer();
+            doubles.put(values, 0, particleCount);
+            window.position(window.position() + particleCount * Double.BYTES);
+        } else {
+            for (int i = 0; i < particleCount; i++)
+                window.putFloat((float) values[i]);
+        }
+    }
+
+    public int frameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (window == null)
+            return;
+        long indexOffset = position();
+        ByteBuffer index = ByteBuffer.allocate(frameCount * Long.BYTES).order(ORDER);
+        for (int i = 0; i < frameCount; i++)
+            index.putLong(frameOffsets[i]);
+        window.force();
+        window = null;
+        channel.write(index.flip(), indexOffset);
+        header.putLong(FRAME_COUNT_POSITION, frameCount);
+        header.putLong(INDEX_OFFSET_POSITION, indexOffset);
+        header.force();
+        channel.truncate(indexOffset + (long) frameCount * Long.BYTES);
+        channel.close();
+    }
+}
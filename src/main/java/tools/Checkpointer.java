@@ -0,0 +1,93 @@
+package tools;
+
+import engine.EstimationMethod;
+import engine.MovementModel;
+import engine.StepObserver;
+import engine.Time;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observer saving checkpoints of a running estimation. The state is captured on the integrating thread and written
+ * by a background thread to a temporary file that then replaces the previous checkpoint, so a crash mid write
+ * leaves the last complete one in place. When the writer falls behind, older pending checkpoints are dropped in
+ * favour of the newest, and closing always waits for that newest one to be written.
+ */
+public class Checkpointer implements StepObserver, Closeable {
+    private static final byte[] END = new byte[0];
+    private static final long FAILURE_CHECK_INTERVAL_MS = 100;
+
+    private final EstimationMethod method;
+    private final Iterator<Time> estimation;
+    private final long seed;
+    private final Path path;
+    private final BlockingQueue<byte[]> pending = new ArrayBlockingQueue<>(1);
+    private final Thread writer;
+    private volatile Throwable failure;
+
+    public Checkpointer(EstimationMethod method, Iterator<Time> estimation, long seed, Path path) {
+        this.method = method;
+        this.estimation = estimation;
+        this.seed = seed;
+        this.path = path;
+        this.writer = new Thread(this::drain, "checkpoint-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static byte[] read(Path path) throws IOException {
+        return Files.readAllBytes(path);
+    }
+
+    @Override
+    public void observe(Time time, MovementModel model) {
+        checkFailure();
+        byte[] checkpoint = method.checkpoint(estimation, seed);
+        while (!pending.offer(checkpoint))
+            pending.poll();
+    }
+
+    private void drain() {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            byte[] checkpoint;
+            while ((checkpoint = pending.take()) != END) {
+                Files.write(temporary, checkpoint);
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (Throwable e) {
+            failure = e;
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null)
+            throw new RuntimeException("Checkpoint writer failed", failure);
+    }
+
+    /**
+     * Waits for the last checkpoint to be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            // The pending checkpoint is the newest one, so wait for the writer to take it rather than dropping it
+            while (writer.isAlive() && !pending.offer(END, FAILURE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing checkpoint", e);
+        }
+        if (failure != null)
+            throw new IOException("Checkpoint writer failed", failure);
+    }
+}
@@ -0,0 +1,50 @@
+package tools;
+
+import engine.Diagnostics;
+import engine.GravitationalSystem;
+import engine.MovementModel;
+import engine.StepObserver;
+import engine.Time;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Observer writing the {@link Diagnostics} of a gravitational system as one csv line per sampled step.
+ */
+public class DiagnosticsWriter implements StepObserver, Closeable {
+    private static final String HEADER = "time,comX,comY,comZ,rhm,px,py,pz,lx,ly,lz,kinetic,potential,total,virial";
+
+    private final BufferedWriter writer;
+
+    public DiagnosticsWriter(String outputName) throws IOException {
+        writer = new BufferedWriter(new FileWriter(outputName));
+        writer.write(HEADER);
+        writer.newLine();
+    }
+
+    @Override
+    public void observe(Time time, MovementModel model) {
+        Diagnostics diagnostics = ((GravitationalSystem) model).diagnostics();
+        double[] com = diagnostics.centerOfMass();
+        double[] p = diagnostics.momentum();
+        double[] l = diagnostics.angularMomentum();
+        try {
+            writer.write(String.format(Locale.US, "%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s",
+                    time.time(), com[0], com[1], com[2], diagnostics.halfMassRadius(), p[0], p[1], p[2],
+                    l[0], l[1], l[2], diagnostics.kineticEnergy(), diagnostics.potentialEnergy(),
+                    diagnostics.totalEnergy(), diagnostics.virialRatio()));
+            writer.newLine();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing on output file", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,68 @@
+package tools;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Aggregates observables sampled by concurrent repetitions of the same simulation. Repetitions must share the time
+ * step and sampling schedule, so that their k-th samples refer to the same time; values are folded into a
+ * {@link RunningStatistics} per observable and sample as soon as they arrive.
+ */
+public class EnsembleStatistics {
+    private final String[] observables;
+    private final List<Double> times = new ArrayList<>();
+    private final List<RunningStatistics[]> samples = new ArrayList<>();
+
+    public EnsembleStatistics(String... observables) {
+        this.observables = observables.clone();
+    }
+
+    /**
+     * Adds the value of one observable, by its position in the constructor, for the given sample of a repetition.
+     */
+    public synchronized void add(int sample, double time, int observable, double value) {
+        while (samples.size() <= sample) {
+            RunningStatistics[] statistics = new RunningStatistics[observables.length];
+            for (int o = 0; o < statistics.length; o++)
+                statistics[o] = new RunningStatistics();
+            samples.add(statistics);
+            times.add(Double.NaN);
+        }
+        if (Double.isNaN(times.get(sample)))
+            times.set(sample, time);
+        samples.get(sample)[observable].add(value);
+    }
+
+    public synchronized RunningStatistics get(int sample, int observable) {
+        return samples.get(sample)[observable];
+    }
+
+    public synchronized int sampleCount() {
+        return samples.size();
+    }
+
+    /**
+     * Writes one csv line per sample: the time, then count, mean, variance, min and max of every observable.
+     */
+    public synchronized void write(String outputName) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputName))) {
+            StringBuilder header = new StringBuilder("time");
+            for (String observable : observables)
+                header.append(",%1$s_count,%1$s_mean,%1$s_variance,%1$s_min,%1$s_max".formatted(observable));
+            writer.write(header.toString());
+            writer.newLine();
+            for (int k = 0; k < samples.size(); k++) {
+                StringBuilder line = new StringBuilder(String.valueOf(times.get(k)));
+                for (RunningStatistics statistics : samples.get(k))
+                    line.append(String.format(Locale.US, ",%d,%s,%s,%s,%s", statistics.count(),
+                            statistics.mean(), statistics.variance(), statistics.min(), statistics.max()));
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package tools;
+
+import engine.DirectSumSolver;
+import engine.ForceError;
+import engine.ForceSolver;
+import engine.Particle;
+import engine.VectorizedSolver;
+
+import java.util.Random;
+
+/**
+ * Compares pair interactions per second of the scalar direct sum and the vectorized kernel on the same
+ * positions. Run with {@code --add-modules jdk.incubator.vector} to benchmark the SIMD path.
+ * Usage: ForceSolverBenchmark [N] [evaluations]
+ */
+public class ForceSolverBenchmark {
+    private static final double GM2 = 1;
+    private static final double H = 0.1;
+    private static final int WARMUP_EVALUATIONS = 5;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int evaluations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Random random = new Random(1);
+        double[] x = new double[n], y = new double[n], z = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextGaussian();
+            y[i] = random.nextGaussian();
+            z[i] = random.nextGaussian();
+        }
+
+        VectorizedSolver vectorized = new VectorizedSolver();
+        System.out.printf("N=%d, Vector API %s%n", n, vectorized.isVectorized() ? "enabled" : "not available, using scalar fallback");
+        double[][] reference = run("direct", new DirectSumSolver(), x, y, z, evaluations);
+        double[][] simd = run("vectorized", vectorized, x, y, z, evaluations);
+        System.out.println("Vectorized force error against direct sum: " + ForceError.between(reference, simd));
+    }
+
+    private static double[][] run(String name, ForceSolver solver, double[] x, double[] y, double[] z, int evaluations) {
+        int n = x.length;
+        double[][] forces = new double[Particle.DIMENSION][n];
+        for (int i = 0; i < WARMUP_EVALUATIONS; i++)
+            solver.computeForces(x, y, z, GM2, H, forces);
+        long start = System.nanoTime();
+        for (int i = 0; i < evaluations; i++)
+            solver.computeForces(x, y, z, GM2, H, forces);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        // Both kernels are credited with the full N(N - 1) interactions, regardless of how they exploit symmetry
+        double interactions = (double) n * (n - 1) * evaluations;
+        System.out.printf("%s: %.3e interactions/s (%.2f ms per evaluation)%n", name, interactions / seconds, seconds * 1e3 / evaluations);
+        return forces;
+    }
+}
@@ -0,0 +1,46 @@
+package tools;
+
+import com.sun.net.httpserver.HttpServer;
+import engine.Metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Local HTTP endpoint serving {@link Metrics#report()} as plain text, for following long runs.
+ */
+public class MetricsServer implements Closeable {
+    private static final String PORT = "metrics.port";
+
+    private final HttpServer server;
+
+    public MetricsServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = Metrics.report().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Starts a server on the port given by {@code -Dmetrics.port}, or returns null when it is not set.
+     */
+    public static MetricsServer startIfConfigured() throws IOException {
+        String port = System.getProperty(PORT);
+        return port == null ? null : new MetricsServer(Integer.parseInt(port));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
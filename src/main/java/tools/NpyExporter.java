@@ -0,0 +1,62 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Converts a binary trajectory into NumPy files: {@code <prefix>.npy} with shape (frames, 6, N) holding the
+ * x, y, z, vx, vy, vz columns, and {@code <prefix>_time.npy} with the time of every frame.
+ * Usage: NpyExporter trajectory.bin prefix
+ */
+public class NpyExporter {
+    private static final byte[] NPY_MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0};
+    private static final int NPY_ALIGNMENT = 64;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2)
+            throw new IllegalArgumentException("Usage: NpyExporter <trajectory.bin> <output prefix>");
+        export(args[0], args[1]);
+    }
+
+    public static void export(String trajectory, String prefix) throws IOException {
+        try (BinaryTrajectoryReader reader = new BinaryTrajectoryReader(trajectory);
+             FileChannel values = open(prefix + ".npy");
+             FileChannel times = open(prefix + "_time.npy")) {
+            int frames = reader.frameCount();
+            String dtype = reader.isSinglePrecision() ? "<f4" : "<f8";
+            values.write(header(dtype, "(%d, %d, %d)".formatted(frames, BinaryTrajectoryFormat.COLUMNS, reader.particleCount())));
+            times.write(header("<f8", "(%d,)".formatted(frames)));
+            ByteBuffer timeValues = ByteBuffer.allocate(frames * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int f = 0; f < frames; f++) {
+                // The columns of a frame are already laid out as a C ordered (6, N) block
+                ByteBuffer frame = reader.frameBytes(f);
+                timeValues.putDouble(frame.getDouble(0));
+                frame.position(BinaryTrajectoryFormat.TIME_SIZE);
+                while (frame.hasRemaining())
+                    values.write(frame);
+            }
+            timeValues.flip();
+            while (timeValues.hasRemaining())
+                times.write(timeValues);
+        }
+    }
+
+    private static FileChannel open(String path) throws IOException {
+        return FileChannel.open(Path.of(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static ByteBuffer header(String dtype, String shape) {
+        String dictionary = "{'descr': '%s', 'fortran_order': False, 'shape': %s, }".formatted(dtype, shape);
+        int unpadded = NPY_MAGIC.length + Short.BYTES + dictionary.length() + 1;
+        int padding = (NPY_ALIGNMENT - unpadded % NPY_ALIGNMENT) % NPY_ALIGNMENT;
+        byte[] text = (dictionary + " ".repeat(padding) + "\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(NPY_MAGIC.length + Short.BYTES + text.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(NPY_MAGIC).putShort((short) text.length).put(text);
+        return header.flip();
+    }
+}
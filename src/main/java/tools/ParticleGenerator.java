@@ -33,15 +33,38 @@ public class ParticleGenerator {
         }
     }
 
+    /**
+     * Reproducible variant of {@link #generate} numbering particles from 0, independent of the global id counter,
+     * so that it can be called from concurrent simulations.
+     */
+    public static List<Particle> generate(int particleNumber, double radius, double initialVelocityModulus, long seed) {
+        Random rand = new Random(seed);
+        List<Particle> particles = new ArrayList<>(particleNumber);
+        for (int i = 0; i < particleNumber; i++) {
+            double x = rand.nextGaussian();
+            double y = rand.nextGaussian();
+            double z = rand.nextGaussian();
+            double[] velocity = getInitialVelocityWithModulus(initialVelocityModulus, rand);
+            particles.add(new Particle(i, x, y, z, velocity[X], velocity[Y], velocity[Z], radius, "P"));
+        }
+        return particles;
+    }
+
     public static List<Particle> generateColisionGalaxys(
             int particleNumberPerGalaxy
     ) {
-        List<Particle> firstGalaxyParticles = new ArrayList<>();
-        generate(particleNumberPerGalaxy, 0, firstGalaxyParticles::add, 0.1);
+        return generateColisionGalaxys(particleNumberPerGalaxy, System.currentTimeMillis());
+    }
+
+    /**
+     * Reproducible variant numbering the first galaxy from 0 and the second one after it.
+     */
+    public static List<Particle> generateColisionGalaxys(int particleNumberPerGalaxy, long seed) {
+        List<Particle> firstGalaxyParticles = generate(particleNumberPerGalaxy, 0, 0.1, seed);
         List<Particle> particles = new ArrayList<>();
         for (Particle p : firstGalaxyParticles) {
             particles.add(p);
-            Particle opposite = new Particle(p.getX() + DELTAX, p.getY() + DELTAY, p.getZ(),
+            Particle opposite = new Particle(particleNumberPerGalaxy + p.getId(), p.getX() + DELTAX, p.getY() + DELTAY, p.getZ(),
                     p.getSpeedX() + 0.1, p.getSpeedY(), p.getSpeedZ(), 0, "P2");
             particles.add(opposite);
             p.setSpeedX(p.getSpeedX() - 0.1);
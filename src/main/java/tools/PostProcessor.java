@@ -1,31 +1,70 @@
 package tools;
 
+import engine.Metrics;
 import engine.Particle;
 import engine.Time;
 
 import java.io.BufferedWriter;
-import java.io.Closeable;
 import java.io.FileWriter;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Locale;
 
-public class PostProcessor implements Closeable {
+public class PostProcessor implements TrajectoryOutput {
     private static final String OUTPUT_FILE_NAME = "output.txt";
     private final BufferedWriter writer;
 
     public PostProcessor(String outputName) {
+        this(outputName, false);
+    }
+
+    private PostProcessor(String outputName, boolean append) {
         Locale.setDefault(Locale.US);
         try {
             if (outputName == null)
                 outputName = OUTPUT_FILE_NAME;
-            writer = new BufferedWriter(new FileWriter(outputName));
+            Writer file = new FileWriter(outputName, append);
+            writer = new BufferedWriter(Metrics.ENABLED ? new CountingWriter(file) : file);
         } catch (IOException e) {
             throw new RuntimeException("Error opening file");
         }
     }
 
+    /**
+     * Reopens a trajectory of {@link #processTime} or {@link #processTimeAnim} frames to continue it: frames later
+     * than {@code time} are cut off and the new ones are appended.
+     */
+    public static PostProcessor resume(String outputName, double time) {
+        String name = outputName == null ? OUTPUT_FILE_NAME : outputName;
+        Path path = Path.of(name);
+        if (Files.exists(path)) {
+            try {
+                long end;
+                try (TextTrajectoryReader reader = new TextTrajectoryReader(name)) {
+                    int kept = 0;
+                    while (kept < reader.frameCount() && reader.time(kept) <= time)
+                        kept++;
+                    end = reader.frameOffset(kept);
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error opening file", e);
+            }
+        }
+        return new PostProcessor(name, true);
+    }
+
+    @Override
     public void processTime(Time time) {
+        long start = Metrics.ENABLED ? Metrics.start() : 0;
         try {
             writer.write(String.valueOf(time.time()));
             writer.newLine();
@@ -33,6 +72,8 @@ public class PostProcessor implements Closeable {
         } catch (IOException e) {
             throw new RuntimeException("Error writing on output file");
         }
+        if (Metrics.ENABLED)
+            Metrics.end(Metrics.Phase.OUTPUT, start);
     }
 
     private void processParticle(Particle particle) {
@@ -44,7 +85,9 @@ public class PostProcessor implements Closeable {
         }
     }
 
+    @Override
     public void processTimeAnim(Time time) {
+        long start = Metrics.ENABLED ? Metrics.start() : 0;
         try {
             List<Particle> parts = time.particles(); // if it's Iterable, collect to a List first
             int n = parts.size();
@@ -66,15 +109,20 @@ public class PostProcessor implements Closeable {
         } catch (IOException e) {
             throw new RuntimeException("Error writing on output file", e);
         }
+        if (Metrics.ENABLED)
+            Metrics.end(Metrics.Phase.OUTPUT, start);
     }
 
     public void processSystemEnergy(Time time, double energy) {
+        long start = Metrics.ENABLED ? Metrics.start() : 0;
         try {
             writer.write(time.time() + "," + energy);
             writer.newLine();
         } catch (IOException e) {
             throw new RuntimeException("Error writing on output file");
         }
+        if (Metrics.ENABLED)
+            Metrics.end(Metrics.Phase.OUTPUT, start);
     }
 
     public void writeRhmInitialLine(int repetitionCount) {
@@ -86,15 +134,45 @@ public class PostProcessor implements Closeable {
     }
 
     public void processRhm(double time, double rhm)  {
+        long start = Metrics.ENABLED ? Metrics.start() : 0;
         try {
             writer.write("%f , %f\n".formatted(time, rhm));
         } catch (IOException e) {
             throw new RuntimeException("Error writing on output file", e);
         }
+        if (Metrics.ENABLED)
+            Metrics.end(Metrics.Phase.OUTPUT, start);
     }
 
     @Override
     public void close() throws IOException {
         writer.close();
     }
-}
\ No newline at end of file
+
+    /**
+     * Counts the characters reaching the file, one byte each in the ASCII output, while metrics are enabled.
+     */
+    private static class CountingWriter extends FilterWriter {
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            Metrics.addBytes(1);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            super.write(buffer, offset, length);
+            Metrics.addBytes(length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            super.write(text, offset, length);
+            Metrics.addBytes(length);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package tools;
+
+/**
+ * Streaming mean, variance and range of a sequence of values, using Welford's update so that no sample has to be
+ * kept and the variance does not suffer from cancellation.
+ */
+public class RunningStatistics {
+    private long count;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double mean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Unbiased sample variance, zero for a single value.
+     */
+    public double variance() {
+        if (count == 0)
+            return Double.NaN;
+        return count == 1 ? 0 : m2 / (count - 1);
+    }
+
+    public double min() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double max() {
+        return count == 0 ? Double.NaN : max;
+    }
+}
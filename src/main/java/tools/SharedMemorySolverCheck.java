@@ -0,0 +1,99 @@
+package tools;
+
+import engine.DirectSumSolver;
+import engine.ForceError;
+import engine.Particle;
+import engine.SharedMemorySolver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Runs {@link SharedMemorySolver} with local worker processes against {@link DirectSumSolver} on the same positions:
+ * several evaluations, then a particle count change that restarts the workers. Fails with a non zero exit code if
+ * forces or potential disagree, if the workers are not child processes of this JVM, or if a worker process or shared
+ * file is left behind after closing.
+ * Usage: SharedMemorySolverCheck [N] [workers]
+ */
+public class SharedMemorySolverCheck {
+    private static final double GM2 = 1;
+    private static final double H = 0.1;
+    private static final int EVALUATIONS = 3;
+    private static final double PERTURBATION = 1e-3;
+    private static final double TOLERANCE = 1e-12;
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        List<Path> filesBefore = sharedFiles();
+        Random random = new Random(1);
+        int failures = 0;
+
+        try (SharedMemorySolver solver = new SharedMemorySolver(workers)) {
+            for (int count : new int[]{n, n / 2}) {
+                double[] x = new double[count], y = new double[count], z = new double[count];
+                for (int i = 0; i < count; i++) {
+                    x[i] = random.nextGaussian();
+                    y[i] = random.nextGaussian();
+                    z[i] = random.nextGaussian();
+                }
+                for (int e = 0; e < EVALUATIONS; e++) {
+                    double[][] reference = new double[Particle.DIMENSION][count];
+                    double[][] shared = new double[Particle.DIMENSION][count];
+                    double referencePotential = new DirectSumSolver().computeForcesAndPotential(x, y, z, GM2, H, reference);
+                    long start = System.nanoTime();
+                    double sharedPotential = solver.computeForcesAndPotential(x, y, z, GM2, H, shared);
+                    double millis = (System.nanoTime() - start) / 1e6;
+                    ForceError error = ForceError.between(reference, shared);
+                    double potentialError = Math.abs(sharedPotential - referencePotential) / Math.abs(referencePotential);
+                    boolean ok = error.maxRelative() <= TOLERANCE && potentialError <= TOLERANCE;
+                    System.out.printf("N=%d evaluation %d: %s, potential relative error %.3e, %.1f ms%s%n",
+                            count, e, error, potentialError, millis, ok ? "" : " MISMATCH");
+                    if (!ok)
+                        failures++;
+                    for (int i = 0; i < count; i++) {
+                        x[i] += PERTURBATION * random.nextGaussian();
+                        y[i] += PERTURBATION * random.nextGaussian();
+                        z[i] += PERTURBATION * random.nextGaussian();
+                    }
+                }
+                long children = ProcessHandle.current().children().count();
+                System.out.printf("N=%d: %d worker processes running%n", count, children);
+                if (children != workers) {
+                    System.out.printf("Expected %d child processes%n", workers);
+                    failures++;
+                }
+            }
+        }
+
+        long leftoverProcesses = ProcessHandle.current().descendants().filter(ProcessHandle::isAlive).count();
+        List<Path> leftoverFiles = sharedFiles().stream().filter(file -> !filesBefore.contains(file)).toList();
+        System.out.printf("After close: %d worker processes, shared files left %s%n", leftoverProcesses, leftoverFiles);
+        if (leftoverProcesses > 0 || !leftoverFiles.isEmpty())
+            failures++;
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * Shared force files currently present where {@link SharedMemorySolver} creates them.
+     */
+    private static List<Path> sharedFiles() throws IOException {
+        Path shm = Path.of("/dev/shm");
+        Path directory = Files.isDirectory(shm) && Files.isWritable(shm) ? shm : Path.of(System.getProperty("java.io.tmpdir"));
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith("forces") && name.endsWith(".shm");
+            }).toList();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package tools;
+
+import engine.Integrator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a grid of independent simulations concurrently on a work-stealing pool. Jobs are started longest first, so
+ * that the short ones fill the gaps left at the end and the sweep takes about as long as its longest job.
+ * <p>
+ * Every job must build its own particles, model and {@link engine.EstimationMethod}, and write to its own output.
+ */
+public class SweepRunner {
+    private final int parallelism;
+
+    public SweepRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public SweepRunner(int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("Parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    public record Job(Integrator integrator, double deltaT, int particleCount, long seed) {
+        /**
+         * Relative cost for the same end time: number of steps times the force evaluations of each step times the
+         * pairs of every evaluation.
+         */
+        public double cost() {
+            return (double) integrator.forceEvaluationsPerStep() * particleCount * particleCount / deltaT;
+        }
+    }
+
+    @FunctionalInterface
+    public interface JobBody {
+        void run(Job job) throws IOException;
+    }
+
+    public static List<Job> grid(List<Integrator> integrators, double[] deltaTs, int[] particleCounts, long[] seeds) {
+        List<Job> jobs = new ArrayList<>();
+        for (Integrator integrator : integrators)
+            for (double deltaT : deltaTs)
+                for (int particleCount : particleCounts)
+                    for (long seed : seeds)
+                        jobs.add(new Job(integrator, deltaT, particleCount, seed));
+        return jobs;
+    }
+
+    /**
+     * Runs every job and waits for all of them. The first failure is rethrown once the others are done.
+     */
+    public void run(List<Job> jobs, JobBody body) throws IOException {
+        List<Callable<Void>> tasks = jobs.stream()
+                .sorted(Comparator.comparingDouble(Job::cost).reversed())
+                .<Callable<Void>>map(job -> () -> {
+                    body.run(job);
+                    return null;
+                })
+                .toList();
+        ForkJoinPool pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        try {
+            Throwable failure = null;
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause();
+                    else
+                        failure.addSuppressed(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Sweep interrupted", e);
+                }
+            }
+            if (failure instanceof IOException e)
+                throw e;
+            if (failure instanceof UncheckedIOException e)
+                throw e.getCause();
+            if (failure instanceof RuntimeException e)
+                throw e;
+            if (failure instanceof Error e)
+                throw e;
+            if (failure != null)
+                throw new IOException(failure);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Random access to the text trajectories written by {@link PostProcessor}: the CSV frames of
+ * {@link PostProcessor#processTime} (a time line followed by one {@code x,y,z,vx,vy,vz} line per particle) and the
+ * extended XYZ frames of {@link PostProcessor#processTimeAnim}. The format is detected from the first lines.
+ * <p>
+ * The constructor makes one sequential pass over the file to record where every frame starts, then maps it in
+ * segments holding a whole number of frames, like {@link BinaryTrajectoryReader}. Frames are parsed straight from
+ * the mapped bytes with absolute reads, so a reader can be shared between threads and memory use does not depend on
+ * the file size.
+ */
+public class TextTrajectoryReader implements TrajectorySource {
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+    private static final long SCAN_WINDOW = 1L << 28;
+    private static final int PROBE_SIZE = 4096;
+    private static final String TIME_KEY = "Time=";
+    // Powers of ten that are exact doubles, so that a mantissa below 2^53 divided by one is correctly rounded
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final long EXACT_MANTISSA = 1L << 53;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int k = 1; k < POWERS_OF_TEN.length; k++)
+            POWERS_OF_TEN[k] = POWERS_OF_TEN[k - 1] * 10;
+    }
+
+    private final FileChannel channel;
+    private final boolean extXyz;
+    private final int particleCount;
+    // Start of every frame plus the end of the last one
+    private final long[] frameOffsets;
+    private final int frameCount;
+    private final String[] types;
+    private final MappedByteBuffer[] segments;
+    // First frame of every segment, plus frameCount
+    private final int[] segmentFrames;
+
+    public TextTrajectoryReader(String path) {
+        try {
+            channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+            String[] firstLines = readLines(0, 2);
+            extXyz = firstLines.length == 2 && firstLines[1].contains("Properties=");
+            FrameIndex index = extXyz ? indexExtXyz() : indexCsv();
+            frameCount = index.count;
+            frameOffsets = Arrays.copyOf(index.offsets, frameCount + 1);
+            frameOffsets[frameCount] = channel.size();
+            particleCount = Math.max(0, index.particleCount);
+            types = new String[particleCount];
+            Arrays.fill(types, "");
+            if (extXyz && frameCount > 0) {
+                String[] lines = readLines(frameOffsets[0], particleCount + 2);
+                for (int i = 0; i < particleCount; i++)
+                    types[i] = lines[i + 2].strip().split("\\s+", 2)[0];
+            }
+
+            int[] firsts = new int[frameCount + 1];
+            int segmentCount = 0;
+            for (int f = 0; f < frameCount; ) {
+                firsts[segmentCount++] = f;
+                long start = frameOffsets[f];
+                if (frameOffsets[f + 1] - start > MAX_SEGMENT_SIZE)
+                    throw new IllegalArgumentException("Frame %d of %s does not fit in a single mapping".formatted(f, path));
+                while (f < frameCount && frameOffsets[f + 1] - start <= MAX_SEGMENT_SIZE)
+                    f++;
+            }
+            firsts[segmentCount] = frameCount;
+            segmentFrames = Arrays.copyOf(firsts, segmentCount + 1);
+            segments = new MappedByteBuffer[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                long start = frameOffsets[segmentFrames[s]];
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, frameOffsets[segmentFrames[s + 1]] - start);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading " + path, e);
+        }
+    }
+
+    private static class FrameIndex {
+        long[] offsets = new long[1024];
+        int count;
+        int particleCount = -1;
+
+        void add(long offset, int particles) {
+            if (particleCount < 0)
+                particleCount = particles;
+            else if (particles != particleCount)
+                throw new IllegalArgumentException("Frame %d holds %d particles instead of %d".formatted(count, particles, particleCount));
+            if (count == offsets.length)
+                offsets = Arrays.copyOf(offsets, 2 * count);
+            offsets[count++] = offset;
+        }
+    }
+
+    /**
+     * A CSV frame starts at every line without a comma, its size is the number of lines up to the next one.
+     */
+    private FrameIndex indexCsv() throws IOException {
+        FrameIndex index = new FrameIndex();
+        long size = channel.size();
+        long lineStart = 0, frameStart = -1;
+        boolean comma = false;
+        int particles = 0;
+        for (long windowStart = 0; windowStart < size; windowStart += SCAN_WINDOW) {
+            int length = (int) Math.min(SCAN_WINDOW, size - windowStart);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+            for (int k = 0; k < length; k++) {
+                byte b = window.get(k);
+                if (b == ',') {
+                    comma = true;
+                } else if (b == '\n') {
+                    long lineEnd = windowStart + k;
+                    if (comma) {
+                        particles++;
+                    } else if (lineEnd > lineStart) {
+                        if (frameStart >= 0)
+                            index.add(frameStart, particles);
+                        frameStart = lineStart;
+                        particles = 0;
+                    }
+                    lineStart = lineEnd + 1;
+                    comma = false;
+                }
+            }
+        }
+        if (comma)
+            particles++;
+        if (frameStart >= 0)
+            index.add(frameStart, particles);
+        return index;
+    }
+
+    /**
+     * An extended XYZ frame is its particle count line, a comment line and one line per particle.
+     */
+    private FrameIndex indexExtXyz() throws IOException {
+        FrameIndex index = new FrameIndex();
+        long size = channel.size();
+        long lineStart = 0;
+        long remainingLines = 0;
+        for (long windowStart = 0; windowStart < size; windowStart += SCAN_WINDOW) {
+            int length = (int) Math.min(SCAN_WINDOW, size - windowStart);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+            for (int k = 0; k < length; k++) {
+                if (window.get(k) != '\n')
+                    continue;
+                long lineEnd = windowStart + k;
+                if (remainingLines == 0 && lineEnd > lineStart) {
+                    String count = readLines(lineStart, 1)[0].strip();
+                    int particles = Integer.parseInt(count);
+                    index.add(lineStart, particles);
+                    remainingLines = particles + 1L;
+                } else if (remainingLines > 0) {
+                    remainingLines--;
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Up to {@code count} lines starting at {@code offset}, read through the channel for the few places that need
+     * text rather than numbers.
+     */
+    private String[] readLines(long offset, int count) throws IOException {
+        StringBuilder text = new StringBuilder();
+        ByteBuffer chunk = ByteBuffer.allocate(PROBE_SIZE);
+        long position = offset;
+        int lines = 0;
+        while (lines < count) {
+            chunk.clear();
+            int read = channel.read(chunk, position);
+            if (read <= 0)
+                break;
+            String piece = new String(chunk.array(), 0, read, StandardCharsets.UTF_8);
+            for (int k = 0; k < piece.length() && lines < count; k++) {
+                char c = piece.charAt(k);
+                if (c == '\n')
+                    lines++;
+                text.append(c);
+            }
+            position += read;
+        }
+        return text.toString().lines().limit(count).toArray(String[]::new);
+    }
+
+    public boolean isExtXyz() {
+        return extXyz;
+    }
+
+    @Override
+    public int particleCount() {
+        return particleCount;
+    }
+
+    @Override
+    public int frameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Byte offset where a frame starts, or the file size for {@code frameCount()}.
+     */
+    long frameOffset(int frame) {
+        return frameOffsets[frame];
+    }
+
+    @Override
+    public String type(int index) {
+        return types[index];
+    }
+
+    @Override
+    public double time(int frame) {
+        Cursor cursor = cursor(frame);
+        if (!extXyz)
+            return cursor.nextNumber();
+        cursor.skipLine();
+        cursor.skipPast(TIME_KEY);
+        return cursor.nextNumber();
+    }
+
+    @Override
+    public void readFrame(int frame, double[][] columns) {
+        Cursor cursor = cursor(frame);
+        cursor.skipLine();
+        if (extXyz)
+            cursor.skipLine();
+        for (int i = 0; i < particleCount; i++) {
+            if (extXyz)
+                cursor.skipToken();
+            for (int c = 0; c < BinaryTrajectoryFormat.COLUMNS; c++)
+                columns[c][i] = cursor.nextNumber();
+            cursor.skipLine();
+        }
+    }
+
+    private Cursor cursor(int frame) {
+        int segment = segment(frame);
+        return new Cursor(segments[segment], (int) (frameOffsets[frame] - frameOffsets[segmentFrames[segment]]));
+    }
+
+    private int segment(int frame) {
+        int found = Arrays.binarySearch(segmentFrames, frame);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads numbers and skips lines through absolute gets on a shared mapping.
+     */
+    private static class Cursor {
+        private final ByteBuffer bytes;
+        private int position;
+
+        Cursor(ByteBuffer bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        void skipLine() {
+            while (position < bytes.limit() && bytes.get(position++) != '\n') {
+            }
+        }
+
+        void skipToken() {
+            skipSeparators();
+            while (position < bytes.limit() && !isSeparator(bytes.get(position)))
+                position++;
+        }
+
+        void skipPast(String key) {
+            int matched = 0;
+            while (position < bytes.limit() && matched < key.length()) {
+                byte b = bytes.get(position++);
+                matched = b == key.charAt(matched) ? matched + 1 : b == key.charAt(0) ? 1 : 0;
+            }
+        }
+
+        /**
+         * Plain decimals such as the {@code %.8f} columns are parsed in place; anything else, such as an exponent,
+         * falls back to {@link Double#parseDouble}.
+         */
+        double nextNumber() {
+            skipSeparators();
+            final int start = position;
+            boolean negative = false;
+            if (position < bytes.limit() && (bytes.get(position) == '-' || bytes.get(position) == '+'))
+                negative = bytes.get(position++) == '-';
+            long mantissa = 0;
+            int decimals = 0;
+            boolean fraction = false, exact = true, digits = false;
+            while (position < bytes.limit()) {
+                byte b = bytes.get(position);
+                if (b >= '0' && b <= '9') {
+                    digits = true;
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (fraction)
+                        decimals++;
+                    if (mantissa >= EXACT_MANTISSA)
+                        exact = false;
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else if (isSeparator(b)) {
+                    break;
+                } else {
+                    exact = false;
+                }
+                position++;
+            }
+            if (exact && digits && decimals < POWERS_OF_TEN.length) {
+                double value = mantissa / POWERS_OF_TEN[decimals];
+                return negative ? -value : value;
+            }
+            byte[] token = new byte[position - start];
+            bytes.get(start, token);
+            return Double.parseDouble(new String(token, StandardCharsets.US_ASCII));
+        }
+
+        private void skipSeparators() {
+            while (position < bytes.limit() && isSeparator(bytes.get(position)))
+                position++;
+        }
+
+        private static boolean isSeparator(byte b) {
+            return b == ',' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+    }
+}
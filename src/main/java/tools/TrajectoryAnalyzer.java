@@ -0,0 +1,197 @@
+package tools;
+
+import engine.BarnesHutSolver;
+import engine.Diagnostics;
+import engine.DirectSumSolver;
+import engine.ForceSolver;
+import engine.Particle;
+import engine.ParticleStore;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Computes observables over every frame of a trajectory written by this project (CSV, extended XYZ or binary), after
+ * the run. Frames are read straight from the mapped file by {@link TrajectorySource} and processed in parallel, each
+ * thread reusing its own buffers, so memory stays at a few frames whatever the file size.
+ * <p>
+ * Writes {@code <prefix>_observables.csv} with the half mass radius, energies, virial ratio, centre of mass and
+ * angular momentum of every frame, and {@code <prefix>_profile.csv} with the radial density profile about the centre
+ * of mass. Options are system properties: {@code mass}, {@code G} and {@code h} as in the simulation (1, 1, 0.1),
+ * {@code potential} = tree (default), direct or none, {@code theta}, {@code bins} and {@code rMax}, which defaults to
+ * the largest distance from the centre of mass in the first frame.
+ * Usage: TrajectoryAnalyzer trajectory prefix
+ */
+public class TrajectoryAnalyzer {
+    private static final String MASS = "mass";
+    private static final String G = "G";
+    private static final String SOFTENING = "h";
+    private static final String POTENTIAL = "potential";
+    private static final String THETA = "theta";
+    private static final String BINS = "bins";
+    private static final String R_MAX = "rMax";
+    private static final double DEFAULT_THETA = 0.5;
+    private static final int DEFAULT_BINS = 50;
+    // Columns of the observables file after frame and time
+    private static final String[] OBSERVABLES = {"rhm", "kinetic", "potential", "total", "virialRatio",
+            "comX", "comY", "comZ", "angularMomentumX", "angularMomentumY", "angularMomentumZ"};
+
+    private final double mass;
+    private final double GM2;
+    private final double h;
+    private final ForceSolver solver;
+    private final int bins;
+    private final double rMax;
+
+    /**
+     * @param solver evaluates the potential energy, null to skip it
+     * @param rMax   outer radius of the density profile, non positive to take it from the first frame
+     */
+    public TrajectoryAnalyzer(double mass, double G, double h, ForceSolver solver, int bins, double rMax) {
+        if (bins <= 0)
+            throw new IllegalArgumentException("Bin count must be positive");
+        this.mass = mass;
+        this.GM2 = G * mass * mass;
+        this.h = h;
+        this.solver = solver;
+        this.bins = bins;
+        this.rMax = rMax;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2)
+            throw new IllegalArgumentException("Usage: TrajectoryAnalyzer <trajectory> <output prefix>");
+        String potential = System.getProperty(POTENTIAL, "tree");
+        ForceSolver solver = switch (potential) {
+            case "tree" -> new BarnesHutSolver(Double.parseDouble(System.getProperty(THETA, String.valueOf(DEFAULT_THETA))));
+            case "direct" -> new DirectSumSolver();
+            case "none" -> null;
+            default -> throw new IllegalArgumentException("Unknown potential solver: " + potential);
+        };
+        TrajectoryAnalyzer analyzer = new TrajectoryAnalyzer(
+                Double.parseDouble(System.getProperty(MASS, "1")),
+                Double.parseDouble(System.getProperty(G, "1")),
+                Double.parseDouble(System.getProperty(SOFTENING, "0.1")),
+                solver,
+                Integer.getInteger(BINS, DEFAULT_BINS),
+                Double.parseDouble(System.getProperty(R_MAX, "0")));
+        long start = System.nanoTime();
+        try (TrajectorySource source = TrajectorySource.open(args[0])) {
+            long indexed = System.nanoTime();
+            analyzer.analyze(source, args[1]);
+            System.out.printf(Locale.US, "Indexed %d frames of %d particles in %.2f s, analysed them in %.2f s%n",
+                    source.frameCount(), source.particleCount(), (indexed - start) / 1e9, (System.nanoTime() - indexed) / 1e9);
+        }
+    }
+
+    public void analyze(TrajectorySource source, String prefix) throws IOException {
+        final int frames = source.frameCount();
+        final double[][] observables = new double[frames][];
+        final double[][] profiles = new double[frames][];
+        final double outerRadius = rMax > 0 || frames == 0 ? rMax : new FrameWorker(source).outerRadius(0);
+        final double binWidth = outerRadius / bins;
+        final ThreadLocal<FrameWorker> workers = ThreadLocal.withInitial(() -> new FrameWorker(source));
+        IntStream.range(0, frames).parallel().forEach(f -> {
+            FrameWorker worker = workers.get();
+            Diagnostics diagnostics = worker.diagnostics(f);
+            observables[f] = new double[]{
+                    diagnostics.halfMassRadius(), diagnostics.kineticEnergy(), diagnostics.potentialEnergy(),
+                    diagnostics.totalEnergy(), diagnostics.virialRatio(),
+                    diagnostics.centerOfMass()[0], diagnostics.centerOfMass()[1], diagnostics.centerOfMass()[2],
+                    diagnostics.angularMomentum()[0], diagnostics.angularMomentum()[1], diagnostics.angularMomentum()[2]};
+            profiles[f] = worker.densityProfile(diagnostics.centerOfMass(), binWidth);
+        });
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Path.of(prefix + "_observables.csv")))) {
+            writer.println("frame,time," + String.join(",", OBSERVABLES));
+            for (int f = 0; f < frames; f++) {
+                StringBuilder row = new StringBuilder().append(f).append(',').append(source.time(f));
+                for (double value : observables[f])
+                    row.append(',').append(value);
+                writer.println(row);
+            }
+        }
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(Files.newBufferedWriter(Path.of(prefix + "_profile.csv"))))) {
+            writer.println("frame,time,rInner,rOuter,density");
+            for (int f = 0; f < frames; f++) {
+                double time = source.time(f);
+                for (int b = 0; b < bins; b++)
+                    writer.println(f + "," + time + "," + b * binWidth + "," + (b + 1) * binWidth + "," + profiles[f][b]);
+            }
+        }
+    }
+
+    /**
+     * Per thread buffers: a particle store whose backing arrays receive the frames, and a solver of its own.
+     */
+    private class FrameWorker {
+        private final TrajectorySource source;
+        private final ParticleStore store;
+        private final double[][] columns;
+        private final double[][] forces;
+        private final ForceSolver potentialSolver;
+
+        FrameWorker(TrajectorySource source) {
+            this.source = source;
+            int n = source.particleCount();
+            List<Particle> particles = new ArrayList<>(n);
+            for (int i = 0; i < n; i++)
+                particles.add(new Particle(i, 0, 0, 0, 0, 0, 0, 0, source.type(i)));
+            store = ParticleStore.of(particles);
+            columns = new double[][]{store.x(), store.y(), store.z(), store.speed(0), store.speed(1), store.speed(2)};
+            forces = new double[Particle.DIMENSION][n];
+            potentialSolver = solver == null ? null : solver.copy();
+        }
+
+        private void load(int frame) {
+            source.readFrame(frame, columns);
+            store.touch();
+        }
+
+        Diagnostics diagnostics(int frame) {
+            load(frame);
+            double potential = potentialSolver == null ? Double.NaN
+                    : potentialSolver.computeForcesAndPotential(store.x(), store.y(), store.z(), GM2, h, forces);
+            return Diagnostics.of(store, mass, potential);
+        }
+
+        /**
+         * Mass per unit volume of every spherical shell about {@code center}, for the frame last loaded.
+         */
+        double[] densityProfile(double[] center, double binWidth) {
+            double[] density = new double[bins];
+            double[] x = store.x(), y = store.y(), z = store.z();
+            for (int i = 0; i < x.length; i++) {
+                double dx = x[i] - center[0], dy = y[i] - center[1], dz = z[i] - center[2];
+                int bin = (int) (Math.sqrt(dx*dx + dy*dy + dz*dz) / binWidth);
+                if (bin < bins)
+                    density[bin] += mass;
+            }
+            for (int b = 0; b < bins; b++) {
+                double inner = b * binWidth, outer = inner + binWidth;
+                density[b] /= 4.0 / 3.0 * Math.PI * (outer * outer * outer - inner * inner * inner);
+            }
+            return density;
+        }
+
+        double outerRadius(int frame) {
+            load(frame);
+            double[] center = Diagnostics.of(store, mass, Double.NaN).centerOfMass();
+            double max = 0;
+            double[] x = store.x(), y = store.y(), z = store.z();
+            for (int i = 0; i < x.length; i++) {
+                double dx = x[i] - center[0], dy = y[i] - center[1], dz = z[i] - center[2];
+                max = Math.max(max, dx*dx + dy*dy + dz*dz);
+            }
+            // Just beyond the farthest particle, so that it falls in the last bin
+            return Math.nextUp(Math.sqrt(max));
+        }
+    }
+}
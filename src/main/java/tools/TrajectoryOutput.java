@@ -0,0 +1,52 @@
+package tools;
+
+import engine.Particle;
+import engine.Time;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Destination for the particle states of sampled frames.
+ */
+public interface TrajectoryOutput extends Closeable {
+    String TEXT = "text";
+    String BINARY = "binary";
+    String BINARY_SINGLE_PRECISION = "binary32";
+
+    void processTime(Time time);
+
+    void processTimeAnim(Time time);
+
+    /**
+     * Opens a text {@link PostProcessor} or a {@link BinaryTrajectoryWriter}. Binary outputs replace the
+     * {@code .txt} extension of the name with {@code .bin}.
+     */
+    static TrajectoryOutput forFormat(String format, String outputName, List<Particle> particles) {
+        if (format == null || format.equals(TEXT))
+            return new PostProcessor(outputName);
+        return switch (format) {
+            case BINARY -> new BinaryTrajectoryWriter(binaryName(outputName), particles, false);
+            case BINARY_SINGLE_PRECISION -> new BinaryTrajectoryWriter(binaryName(outputName), particles, true);
+            default -> throw new IllegalArgumentException("Unknown trajectory format: " + format);
+        };
+    }
+
+    /**
+     * Reopens an output of {@link #forFormat} to continue a resumed run: frames sampled after {@code time} are cut
+     * off and new ones are appended to those before. A missing file is started as by {@link #forFormat}.
+     */
+    static TrajectoryOutput resumeFormat(String format, String outputName, List<Particle> particles, double time) {
+        if (format == null || format.equals(TEXT))
+            return PostProcessor.resume(outputName, time);
+        return switch (format) {
+            case BINARY -> BinaryTrajectoryWriter.resume(binaryName(outputName), particles, false, time);
+            case BINARY_SINGLE_PRECISION -> BinaryTrajectoryWriter.resume(binaryName(outputName), particles, true, time);
+            default -> throw new IllegalArgumentException("Unknown trajectory format: " + format);
+        };
+    }
+
+    private static String binaryName(String outputName) {
+        return outputName == null ? "output.bin" : outputName.replaceFirst("\\.txt$", "") + ".bin";
+    }
+}
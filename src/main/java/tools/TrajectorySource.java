@@ -0,0 +1,43 @@
+package tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Random access to the frames of a trajectory file, whatever its format. Implementations can be shared between
+ * threads, so frames can be read and processed in parallel.
+ */
+public interface TrajectorySource extends Closeable {
+
+    int particleCount();
+
+    int frameCount();
+
+    double time(int frame);
+
+    String type(int index);
+
+    /**
+     * Fills {@code columns[c][i]} with column c (x, y, z, vx, vy, vz) of particle i.
+     */
+    void readFrame(int frame, double[][] columns);
+
+    /**
+     * Opens a {@link BinaryTrajectoryReader} when the file starts with the binary magic, and a
+     * {@link TextTrajectoryReader} for the text outputs of {@link PostProcessor} otherwise.
+     */
+    static TrajectorySource open(String path) throws IOException {
+        byte[] magic = new byte[BinaryTrajectoryFormat.MAGIC.length];
+        int read;
+        try (InputStream in = Files.newInputStream(Path.of(path))) {
+            read = in.readNBytes(magic, 0, magic.length);
+        }
+        if (read == magic.length && Arrays.equals(magic, BinaryTrajectoryFormat.MAGIC))
+            return new BinaryTrajectoryReader(path);
+        return new TextTrajectoryReader(path);
+    }
+}